@@ -2,11 +2,16 @@ package com.pseuco.np22;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executors;
 
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
 import com.pseuco.np22.rocket.Rocket;
+import com.pseuco.np22.rocket.Journal.SyncPolicy;
 import com.pseuco.np22.slug.Slug;
 import com.sun.net.httpserver.HttpServer;
 
@@ -44,6 +49,209 @@ public class Cli {
     @Parameter(names = "-timeout")
     private int timeout = 10;
 
+    /**
+     * The file to which ticket sales are logged, journaling is disabled if not given.
+     */
+    @Parameter(names = "-journal")
+    private String journal = null;
+
+    /**
+     * When the journal forces sales to the disk (BATCH, INTERVAL or NONE).
+     */
+    @Parameter(names = "-journal-sync")
+    private SyncPolicy journalSync = SyncPolicy.BATCH;
+
+    /**
+     * The interval in milliseconds in which the journal is synced with the INTERVAL policy.
+     */
+    @Parameter(names = "-journal-sync-interval")
+    private long journalSyncInterval = 100;
+
+    /**
+     * The interval in seconds in which snapshots of the journaled ticket states are taken.
+     */
+    @Parameter(names = "-snapshot-interval")
+    private int snapshotInterval = 60;
+
+    /**
+     * The file in which the ticket states are kept off-heap, tickets are kept on the heap if
+     * not given.
+     */
+    @Parameter(names = "-store")
+    private String store = null;
+
+    /**
+     * The number of requests a server queues before further requests are rejected, unbounded
+     * if zero.
+     */
+    @Parameter(names = "-mailbox-capacity")
+    private int mailboxCapacity = 0;
+
+    /**
+     * The transport of requests to the servers, `mailbox` or the lock-free `ring`.
+     */
+    @Parameter(names = "-transport")
+    private String transport = "mailbox";
+
+    /**
+     * How servers wait for requests with the ring transport: `spin`, `yield` or `park`.
+     */
+    @Parameter(names = "-wait-strategy")
+    private String waitStrategy = "park";
+
+    /**
+     * The number of worker threads all servers share, every server gets its own thread if
+     * zero.
+     */
+    @Parameter(names = "-scheduler-threads")
+    private int schedulerThreads = 0;
+
+    /**
+     * Let the threads of the load balancer process the requests of idle servers themselves
+     * instead of handing them over to the threads of the servers.
+     */
+    @Parameter(names = "-run-to-completion")
+    private boolean runToCompletion = false;
+
+    /**
+     * The time in milliseconds after which a queued request is dropped because the client
+     * has most likely given up, requests are never dropped if zero.
+     */
+    @Parameter(names = "-request-deadline")
+    private int requestDeadline = 0;
+
+    /**
+     * Scale the number of servers automatically according to the load.
+     */
+    @Parameter(names = "-autoscale")
+    private boolean autoscale = false;
+
+    /**
+     * The minimal number of servers when scaling automatically.
+     */
+    @Parameter(names = "-min-servers")
+    private int minServers = 1;
+
+    /**
+     * The maximal number of servers when scaling automatically.
+     */
+    @Parameter(names = "-max-servers")
+    private int maxServers = 16;
+
+    /**
+     * The targeted 99th percentile of the request latency in milliseconds when scaling
+     * automatically.
+     */
+    @Parameter(names = "-target-latency")
+    private int targetLatency = 100;
+
+    /**
+     * The port on which this process serves as ticket authority for the cluster.
+     */
+    @Parameter(names = "-authority-port")
+    private int authorityPort = 0;
+
+    /**
+     * The host on which this process serves as ticket authority, only nodes which can reach
+     * it may lease tickets.
+     */
+    @Parameter(names = "-authority-host")
+    private String authorityHost = "127.0.0.1";
+
+    /**
+     * The address (host:port) of the ticket authority to lease tickets from in cluster mode.
+     */
+    @Parameter(names = "-authority")
+    private String authority = null;
+
+    /**
+     * The time in milliseconds after which the authority reclaims the tickets of a silent
+     * cluster node.
+     */
+    @Parameter(names = "-lease-time")
+    private int leaseTime = 10000;
+
+    /**
+     * The address (host:port) on which this process gossips with other cluster nodes about
+     * the available tickets, port 0 picks a free port.
+     */
+    @Parameter(names = "-gossip")
+    private String gossip = null;
+
+    /**
+     * The maximal number of tickets a customer may reserve at once.
+     */
+    @Parameter(names = "-max-group-size")
+    private int maxGroupSize = 10;
+
+    /**
+     * An event (id:tickets[:timeout]) sold next to the default event, may be given several
+     * times. Such events are not journaled or shared, so they cannot be combined with a
+     * journal, ticket store or cluster.
+     */
+    @Parameter(names = "-event")
+    private List<String> events = new ArrayList<>();
+
+    /**
+     * The timeout of reservations of a customer tier (tier:milliseconds) given by the
+     * X-Customer-Tier header, may be given several times. The header is set by the client,
+     * so a tier only shortens the timeout of the event.
+     */
+    @Parameter(names = "-tier-timeout")
+    private List<String> tierTimeouts = new ArrayList<>();
+
+    /**
+     * The number of times a customer may extend a reservation.
+     */
+    @Parameter(names = "-max-extensions")
+    private int maxExtensions = 2;
+
+    /**
+     * The minimal time in milliseconds between two updates pushed to clients subscribed to
+     * the availability stream.
+     */
+    @Parameter(names = "-stream-interval")
+    private int streamInterval = 1000;
+
+    /**
+     * The maximal age in milliseconds of the estimate the load balancer answers polls for
+     * the available tickets with, polls always reach a server if zero.
+     */
+    @Parameter(names = "-availability-max-age")
+    private int availabilityMaxAge = 10000;
+
+    /**
+     * Put customers in a waiting room before they may reserve tickets.
+     */
+    @Parameter(names = "-waiting-room")
+    private boolean waitingRoom = false;
+
+    /**
+     * The number of customers per second and active server admitted by the waiting room.
+     */
+    @Parameter(names = "-admission-rate")
+    private int admissionRate = 200;
+
+    /**
+     * The time in milliseconds after which an admission expires if the customer does not
+     * reserve tickets.
+     */
+    @Parameter(names = "-admission-window")
+    private int admissionWindow = 30000;
+
+    /**
+     * The number of requests per second a customer may send to the servers, not limited if
+     * zero.
+     */
+    @Parameter(names = "-customer-rate")
+    private int customerRate = 0;
+
+    /**
+     * The number of requests a customer may send to the servers at once.
+     */
+    @Parameter(names = "-customer-burst")
+    private int customerBurst = 10;
+
     /**
      * <p>
      * The number of threads of the load balancer.
@@ -76,8 +284,32 @@ public class Cli {
      */
     public static void main(final String[] args) throws IOException {
         final var app = new Cli();
-        JCommander.newBuilder().addObject(app).args(args).build();
-        app.run();
+        final var commander = JCommander.newBuilder().addObject(app).build();
+        try {
+            commander.parse(args);
+            app.run();
+        } catch (ParameterException error) {
+            // Report malformed options together with the usage instead of a stack trace.
+            System.err.println(error.getMessage());
+            commander.usage();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Parses a number given as part of the value of an option.
+     * 
+     * @param number  The number to parse.
+     * @param message The message to report if the number is malformed.
+     * @return The number.
+     * @throws ParameterException When the number is malformed.
+     */
+    private static int parseNumber(final String number, final String message) {
+        try {
+            return Integer.parseInt(number);
+        } catch (NumberFormatException error) {
+            throw new ParameterException(message);
+        }
     }
 
     /**
@@ -88,6 +320,61 @@ public class Cli {
     public void run() throws IOException {
         try {
             final var options = new Config(this.tickets, this.timeout);
+            options.setJournalPath(this.journal == null ? null : Path.of(this.journal));
+            options.setJournalSyncPolicy(this.journalSync);
+            options.setJournalSyncInterval(this.journalSyncInterval);
+            options.setSnapshotInterval(this.snapshotInterval);
+            options.setTicketStorePath(this.store == null ? null : Path.of(this.store));
+            options.setMailboxCapacity(this.mailboxCapacity);
+            options.setTransport(this.transport);
+            options.setWaitStrategy(this.waitStrategy);
+            options.setSchedulerThreads(this.schedulerThreads);
+            options.setRunToCompletion(this.runToCompletion);
+            options.setRequestDeadline(this.requestDeadline);
+            options.setAutoscale(this.autoscale);
+            options.setMinServers(this.minServers);
+            options.setMaxServers(this.maxServers);
+            options.setTargetLatency(this.targetLatency);
+            options.setAuthorityPort(this.authorityPort);
+            options.setAuthorityHost(this.authorityHost);
+            if (this.authority != null) {
+                final var separator = this.authority.lastIndexOf(':');
+                options.setAuthorityAddress(new InetSocketAddress(this.authority.substring(0, separator),
+                        Integer.parseInt(this.authority.substring(separator + 1))));
+            }
+            options.setLeaseTime(this.leaseTime);
+            options.setMaxGroupSize(this.maxGroupSize);
+            if (this.gossip != null) {
+                final var separator = this.gossip.lastIndexOf(':');
+                options.setGossipAddress(new InetSocketAddress(this.gossip.substring(0, separator),
+                        Integer.parseInt(this.gossip.substring(separator + 1))));
+            }
+            for (final var event : this.events) {
+                final var message = "Invalid -event " + event + ", expected id:tickets[:timeout]!";
+                final var parts = event.split(":", -1);
+                if (parts.length < 2 || parts.length > 3 || parts[0].isEmpty()) {
+                    throw new ParameterException(message);
+                }
+                final var timeout = parts.length > 2 ? parseNumber(parts[2], message) : this.timeout;
+                options.addEvent(new Config.EventOptions(parts[0], parseNumber(parts[1], message), timeout));
+            }
+            for (final var tierTimeout : this.tierTimeouts) {
+                final var message = "Invalid -tier-timeout " + tierTimeout + ", expected tier:milliseconds!";
+                final var separator = tierTimeout.lastIndexOf(':');
+                if (separator <= 0) {
+                    throw new ParameterException(message);
+                }
+                options.setTierTimeout(tierTimeout.substring(0, separator),
+                        parseNumber(tierTimeout.substring(separator + 1), message));
+            }
+            options.setMaxExtensions(this.maxExtensions);
+            options.setStreamInterval(this.streamInterval);
+            options.setAvailabilityMaxAge(this.availabilityMaxAge);
+            options.setWaitingRoom(this.waitingRoom);
+            options.setAdmissionRate(this.admissionRate);
+            options.setAdmissionWindow(this.admissionWindow);
+            options.setCustomerRate(this.customerRate);
+            options.setCustomerBurst(this.customerBurst);
             // Create the handler for requests and the HTTP server.
             final var handler = this.slug ? new Slug(options) : Rocket.launch(options, this.bonus);
             final var server = HttpServer.create(new InetSocketAddress(this.host, this.port), 8);
@@ -1,5 +1,15 @@
 package com.pseuco.np22;
 
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.pseuco.np22.rocket.Journal.SyncPolicy;
+
 /**
  * Configuration of the ticket sales system.
  */
@@ -16,6 +26,182 @@ public class Config {
      * The number of initial servers.
      */
     private final int initialServers;
+    /**
+     * The path of the journal file or {@code null} if journaling is disabled.
+     */
+    private Path journalPath = null;
+    /**
+     * The sync policy of the journal.
+     */
+    private SyncPolicy journalSyncPolicy = SyncPolicy.BATCH;
+    /**
+     * The sync interval of the journal in milliseconds.
+     */
+    private long journalSyncInterval = 100;
+    /**
+     * The interval in which snapshots of the ticket states are taken in seconds.
+     */
+    private int snapshotInterval = 60;
+    /**
+     * The path of the memory-mapped ticket store or {@code null} to keep tickets on the heap.
+     */
+    private Path ticketStorePath = null;
+    /**
+     * The capacity of the low priority lane of server mailboxes, {@code 0} means unbounded.
+     */
+    private int mailboxCapacity = 0;
+    /**
+     * The transport of requests to the servers, either {@code mailbox} or {@code ring}.
+     */
+    private String transport = "mailbox";
+    /**
+     * How servers with the ring transport wait for requests, either {@code spin},
+     * {@code yield} or {@code park}.
+     */
+    private String waitStrategy = "park";
+    /**
+     * The number of worker threads the servers are scheduled on, {@code 0} means every server
+     * runs in its own thread.
+     */
+    private int schedulerThreads = 0;
+    /**
+     * Whether threads of the load balancer process requests of idle servers themselves.
+     */
+    private boolean runToCompletion = false;
+    /**
+     * The time in milliseconds after which servers drop queued requests, {@code 0} means never.
+     */
+    private int requestDeadline = 0;
+    /**
+     * Whether the number of servers is scaled automatically.
+     */
+    private boolean autoscale = false;
+    /**
+     * The minimal number of servers when scaling automatically.
+     */
+    private int minServers = 1;
+    /**
+     * The maximal number of servers when scaling automatically.
+     */
+    private int maxServers = 16;
+    /**
+     * The targeted 99th percentile of the request latency in milliseconds.
+     */
+    private int targetLatency = 100;
+    /**
+     * The port on which this node serves as ticket authority, {@code 0} if it does not.
+     */
+    private int authorityPort = 0;
+    /**
+     * The host on which this node serves as ticket authority, the loopback interface by
+     * default such that only local nodes may lease tickets.
+     */
+    private String authorityHost = "127.0.0.1";
+    /**
+     * The address of the ticket authority to lease tickets from or {@code null} if tickets
+     * are kept locally.
+     */
+    private InetSocketAddress authorityAddress = null;
+    /**
+     * The time after which the authority reclaims the tickets of a silent node in
+     * milliseconds.
+     */
+    private int leaseTime = 10000;
+    /**
+     * The address on which this node exchanges availability digests with other cluster
+     * nodes, port {@code 0} picks a free port.
+     */
+    private InetSocketAddress gossipAddress = new InetSocketAddress("127.0.0.1", 0);
+    /**
+     * The maximal number of tickets a customer may reserve at once.
+     */
+    private int maxGroupSize = 10;
+    /**
+     * The events sold next to the default event by id.
+     */
+    private final Map<String, EventOptions> events = new LinkedHashMap<>();
+    /**
+     * The timeouts of reservations in milliseconds by customer tier, shortening the timeout
+     * of the event.
+     */
+    private final Map<String, Integer> tierTimeouts = new HashMap<>();
+    /**
+     * The number of times a customer may extend a reservation.
+     */
+    private int maxExtensions = 2;
+    /**
+     * The minimal time between two updates of the availability stream in milliseconds.
+     */
+    private int streamInterval = 1000;
+    /**
+     * The maximal age in milliseconds of the estimates the load balancer answers polls for
+     * the available tickets with, {@code 0} disables the cache.
+     */
+    private int availabilityMaxAge = 10000;
+    /**
+     * Whether reservations have to pass the waiting room.
+     */
+    private boolean waitingRoom = false;
+    /**
+     * The number of customers per second and active server admitted by the waiting room.
+     */
+    private int admissionRate = 200;
+    /**
+     * The time in milliseconds after which an unused admission expires.
+     */
+    private int admissionWindow = 30000;
+    /**
+     * The number of requests per second a customer may send to the servers, {@code 0}
+     * disables the limit.
+     */
+    private int customerRate = 0;
+    /**
+     * The number of requests a customer may send to the servers at once.
+     */
+    private int customerBurst = 10;
+
+    /**
+     * The options of an event sold next to the default event.
+     */
+    public static class EventOptions {
+        /**
+         * The id of the event.
+         */
+        private final String id;
+        /**
+         * The number of tickets initially available for the event.
+         */
+        private final int numTickets;
+        /**
+         * The timeout of reservations for the event in seconds.
+         */
+        private final int timeout;
+
+        /**
+         * Constructs the options of an event.
+         * 
+         * @param id         The id of the event.
+         * @param numTickets The number of tickets initially available for the event.
+         * @param timeout    The timeout of reservations for the event in seconds.
+         */
+        public EventOptions(final String id, final int numTickets, final int timeout) {
+            this.id = id;
+            this.numTickets = numTickets;
+            this.timeout = timeout;
+        }
+
+        public String getId() {
+            return this.id;
+        }
+
+        public int getNumTickets() {
+            return this.numTickets;
+        }
+
+        public int getTimeout() {
+            return this.timeout;
+        }
+    }
 
     /**
      * Constructs a new instance from the provided parameters.
@@ -56,4 +242,580 @@ public class Config {
     public int getInitialServers() {
         return this.initialServers;
     }
+
+    /**
+     * Returns the path of the journal file.
+     * 
+     * @return The path of the journal file or {@code null} if journaling is disabled.
+     */
+    public Path getJournalPath() {
+        return this.journalPath;
+    }
+
+    /**
+     * Sets the path of the journal file.
+     * 
+     * @param journalPath The path of the journal file or {@code null} to disable journaling.
+     */
+    protected void setJournalPath(final Path journalPath) {
+        this.journalPath = journalPath;
+    }
+
+    /**
+     * Returns the sync policy of the journal.
+     * 
+     * @return The sync policy of the journal.
+     */
+    public SyncPolicy getJournalSyncPolicy() {
+        return this.journalSyncPolicy;
+    }
+
+    /**
+     * Sets the sync policy of the journal.
+     * 
+     * @param journalSyncPolicy The sync policy of the journal.
+     */
+    protected void setJournalSyncPolicy(final SyncPolicy journalSyncPolicy) {
+        this.journalSyncPolicy = journalSyncPolicy;
+    }
+
+    /**
+     * Returns the sync interval of the journal in milliseconds.
+     * 
+     * @return The sync interval of the journal in milliseconds.
+     */
+    public long getJournalSyncInterval() {
+        return this.journalSyncInterval;
+    }
+
+    /**
+     * Sets the sync interval of the journal in milliseconds.
+     * 
+     * @param journalSyncInterval The sync interval of the journal in milliseconds.
+     */
+    protected void setJournalSyncInterval(final long journalSyncInterval) {
+        this.journalSyncInterval = journalSyncInterval;
+    }
+
+    /**
+     * Returns the interval in which snapshots of the ticket states are taken in seconds.
+     * 
+     * @return The interval in which snapshots are taken in seconds.
+     */
+    public int getSnapshotInterval() {
+        return this.snapshotInterval;
+    }
+
+    /**
+     * Sets the interval in which snapshots of the ticket states are taken in seconds.
+     * 
+     * @param snapshotInterval The interval in which snapshots are taken in seconds.
+     */
+    protected void setSnapshotInterval(final int snapshotInterval) {
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    /**
+     * Returns the path of the memory-mapped ticket store.
+     * 
+     * @return The path of the ticket store or {@code null} to keep tickets on the heap.
+     */
+    public Path getTicketStorePath() {
+        return this.ticketStorePath;
+    }
+
+    /**
+     * Sets the path of the memory-mapped ticket store.
+     * 
+     * @param ticketStorePath The path of the ticket store or {@code null} to keep tickets on
+     *                        the heap.
+     */
+    protected void setTicketStorePath(final Path ticketStorePath) {
+        this.ticketStorePath = ticketStorePath;
+    }
+
+    /**
+     * Returns the capacity of the low priority lane of server mailboxes.
+     * 
+     * @return The capacity of server mailboxes, {@code 0} means unbounded.
+     */
+    public int getMailboxCapacity() {
+        return this.mailboxCapacity;
+    }
+
+    /**
+     * Sets the capacity of the low priority lane of server mailboxes.
+     * 
+     * @param mailboxCapacity The capacity of server mailboxes, {@code 0} means unbounded.
+     */
+    protected void setMailboxCapacity(final int mailboxCapacity) {
+        this.mailboxCapacity = mailboxCapacity;
+    }
+
+    /**
+     * Returns the transport of requests to the servers.
+     * 
+     * @return Either {@code mailbox} or {@code ring}.
+     */
+    public String getTransport() {
+        return this.transport;
+    }
+
+    /**
+     * Sets the transport of requests to the servers.
+     * 
+     * @param transport Either {@code mailbox} or {@code ring}.
+     */
+    protected void setTransport(final String transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * Returns how servers with the ring transport wait for requests.
+     * 
+     * @return Either {@code spin}, {@code yield} or {@code park}.
+     */
+    public String getWaitStrategy() {
+        return this.waitStrategy;
+    }
+
+    /**
+     * Sets how servers with the ring transport wait for requests.
+     * 
+     * @param waitStrategy Either {@code spin}, {@code yield} or {@code park}.
+     */
+    protected void setWaitStrategy(final String waitStrategy) {
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * Returns the number of worker threads the servers are scheduled on.
+     * 
+     * @return The number of worker threads, {@code 0} means a thread per server.
+     */
+    public int getSchedulerThreads() {
+        return this.schedulerThreads;
+    }
+
+    /**
+     * Sets the number of worker threads the servers are scheduled on.
+     * 
+     * @param schedulerThreads The number of worker threads, {@code 0} means a thread per
+     *                         server.
+     */
+    protected void setSchedulerThreads(final int schedulerThreads) {
+        this.schedulerThreads = schedulerThreads;
+    }
+
+    /**
+     * Returns whether threads of the load balancer process requests of idle servers
+     * themselves.
+     * 
+     * @return Whether run-to-completion mode is enabled.
+     */
+    public boolean isRunToCompletion() {
+        return this.runToCompletion;
+    }
+
+    /**
+     * Sets whether threads of the load balancer process requests of idle servers themselves.
+     * 
+     * @param runToCompletion Whether run-to-completion mode is enabled.
+     */
+    protected void setRunToCompletion(final boolean runToCompletion) {
+        this.runToCompletion = runToCompletion;
+    }
+
+    /**
+     * Returns the time in milliseconds after which servers drop queued requests.
+     * 
+     * @return The request deadline in milliseconds, {@code 0} means never.
+     */
+    public int getRequestDeadline() {
+        return this.requestDeadline;
+    }
+
+    /**
+     * Sets the time in milliseconds after which servers drop queued requests.
+     * 
+     * @param requestDeadline The request deadline in milliseconds, {@code 0} means never.
+     */
+    protected void setRequestDeadline(final int requestDeadline) {
+        this.requestDeadline = requestDeadline;
+    }
+
+    /**
+     * Returns whether the number of servers is scaled automatically.
+     * 
+     * @return Whether the number of servers is scaled automatically.
+     */
+    public boolean isAutoscale() {
+        return this.autoscale;
+    }
+
+    /**
+     * Sets whether the number of servers is scaled automatically.
+     * 
+     * @param autoscale Whether the number of servers is scaled automatically.
+     */
+    protected void setAutoscale(final boolean autoscale) {
+        this.autoscale = autoscale;
+    }
+
+    /**
+     * Returns the minimal number of servers when scaling automatically.
+     * 
+     * @return The minimal number of servers.
+     */
+    public int getMinServers() {
+        return this.minServers;
+    }
+
+    /**
+     * Sets the minimal number of servers when scaling automatically.
+     * 
+     * @param minServers The minimal number of servers.
+     */
+    protected void setMinServers(final int minServers) {
+        this.minServers = minServers;
+    }
+
+    /**
+     * Returns the maximal number of servers when scaling automatically.
+     * 
+     * @return The maximal number of servers.
+     */
+    public int getMaxServers() {
+        return this.maxServers;
+    }
+
+    /**
+     * Sets the maximal number of servers when scaling automatically.
+     * 
+     * @param maxServers The maximal number of servers.
+     */
+    protected void setMaxServers(final int maxServers) {
+        this.maxServers = maxServers;
+    }
+
+    /**
+     * Returns the targeted 99th percentile of the request latency in milliseconds.
+     * 
+     * @return The targeted request latency in milliseconds.
+     */
+    public int getTargetLatency() {
+        return this.targetLatency;
+    }
+
+    /**
+     * Sets the targeted 99th percentile of the request latency in milliseconds.
+     * 
+     * @param targetLatency The targeted request latency in milliseconds.
+     */
+    protected void setTargetLatency(final int targetLatency) {
+        this.targetLatency = targetLatency;
+    }
+
+    /**
+     * Returns the port on which this node serves as ticket authority.
+     * 
+     * @return The port of the ticket authority, {@code 0} if this node is no authority.
+     */
+    public int getAuthorityPort() {
+        return this.authorityPort;
+    }
+
+    /**
+     * Sets the port on which this node serves as ticket authority.
+     * 
+     * @param authorityPort The port of the ticket authority, {@code 0} if this node is no
+     *                      authority.
+     */
+    protected void setAuthorityPort(final int authorityPort) {
+        this.authorityPort = authorityPort;
+    }
+
+    /**
+     * Returns the host on which this node serves as ticket authority.
+     * 
+     * @return The host of the ticket authority.
+     */
+    public String getAuthorityHost() {
+        return this.authorityHost;
+    }
+
+    /**
+     * Sets the host on which this node serves as ticket authority.
+     * 
+     * @param authorityHost The host of the ticket authority.
+     */
+    protected void setAuthorityHost(final String authorityHost) {
+        this.authorityHost = authorityHost;
+    }
+
+    /**
+     * Returns the address of the ticket authority to lease tickets from.
+     * 
+     * @return The address of the authority or {@code null} if tickets are kept locally.
+     */
+    public InetSocketAddress getAuthorityAddress() {
+        return this.authorityAddress;
+    }
+
+    /**
+     * Sets the address of the ticket authority to lease tickets from.
+     * 
+     * @param authorityAddress The address of the authority or {@code null} if tickets are
+     *                         kept locally.
+     */
+    protected void setAuthorityAddress(final InetSocketAddress authorityAddress) {
+        this.authorityAddress = authorityAddress;
+    }
+
+    /**
+     * Returns the time after which the authority reclaims the tickets of a silent node.
+     * 
+     * @return The lease time in milliseconds.
+     */
+    public int getLeaseTime() {
+        return this.leaseTime;
+    }
+
+    /**
+     * Sets the time after which the authority reclaims the tickets of a silent node.
+     * 
+     * @param leaseTime The lease time in milliseconds.
+     */
+    protected void setLeaseTime(final int leaseTime) {
+        this.leaseTime = leaseTime;
+    }
+
+    /**
+     * Indicates whether this node is part of a cluster.
+     * 
+     * @return Whether this node is the ticket authority or leases tickets from one.
+     */
+    public boolean isCluster() {
+        return this.authorityPort != 0 || this.authorityAddress != null;
+    }
+
+    /**
+     * Returns the address on which this node exchanges availability digests.
+     * 
+     * @return The gossip address, port {@code 0} picks a free port.
+     */
+    public InetSocketAddress getGossipAddress() {
+        return this.gossipAddress;
+    }
+
+    /**
+     * Sets the address on which this node exchanges availability digests.
+     * 
+     * @param gossipAddress The gossip address, port {@code 0} picks a free port.
+     */
+    protected void setGossipAddress(final InetSocketAddress gossipAddress) {
+        this.gossipAddress = gossipAddress;
+    }
+
+    /**
+     * Returns the maximal number of tickets a customer may reserve at once.
+     * 
+     * @return The maximal size of a group reservation.
+     */
+    public int getMaxGroupSize() {
+        return this.maxGroupSize;
+    }
+
+    /**
+     * Sets the maximal number of tickets a customer may reserve at once.
+     * 
+     * @param maxGroupSize The maximal size of a group reservation.
+     */
+    protected void setMaxGroupSize(final int maxGroupSize) {
+        this.maxGroupSize = maxGroupSize;
+    }
+
+    /**
+     * Returns the events sold next to the default event.
+     * 
+     * @return The options of the additional events.
+     */
+    public Collection<EventOptions> getEvents() {
+        return Collections.unmodifiableCollection(this.events.values());
+    }
+
+    /**
+     * Adds an event sold next to the default event, replacing any event with the same id.
+     * 
+     * @param event The options of the event.
+     */
+    protected void addEvent(final EventOptions event) {
+        this.events.put(event.getId(), event);
+    }
+
+    /**
+     * Returns the timeouts of reservations by customer tier.
+     * 
+     * @return The timeouts in milliseconds by customer tier.
+     */
+    public Map<String, Integer> getTierTimeouts() {
+        return Collections.unmodifiableMap(this.tierTimeouts);
+    }
+
+    /**
+     * Sets the timeout of reservations of customers of the given tier.
+     * 
+     * @param tier    The tier of the customers.
+     * @param timeout The timeout in milliseconds.
+     */
+    protected void setTierTimeout(final String tier, final int timeout) {
+        this.tierTimeouts.put(tier, timeout);
+    }
+
+    /**
+     * Returns the number of times a customer may extend a reservation.
+     * 
+     * @return The maximal number of extensions of a reservation.
+     */
+    public int getMaxExtensions() {
+        return this.maxExtensions;
+    }
+
+    /**
+     * Sets the number of times a customer may extend a reservation.
+     * 
+     * @param maxExtensions The maximal number of extensions of a reservation.
+     */
+    protected void setMaxExtensions(final int maxExtensions) {
+        this.maxExtensions = maxExtensions;
+    }
+
+    /**
+     * Returns the minimal time between two updates of the availability stream.
+     * 
+     * @return The stream interval in milliseconds.
+     */
+    public int getStreamInterval() {
+        return this.streamInterval;
+    }
+
+    /**
+     * Sets the minimal time between two updates of the availability stream.
+     * 
+     * @param streamInterval The stream interval in milliseconds.
+     */
+    protected void setStreamInterval(final int streamInterval) {
+        this.streamInterval = streamInterval;
+    }
+
+    /**
+     * Returns the maximal age of the estimates the load balancer answers polls with.
+     * 
+     * @return The maximal age in milliseconds, {@code 0} means the cache is disabled.
+     */
+    public int getAvailabilityMaxAge() {
+        return this.availabilityMaxAge;
+    }
+
+    /**
+     * Sets the maximal age of the estimates the load balancer answers polls with.
+     * 
+     * @param availabilityMaxAge The maximal age in milliseconds, {@code 0} disables the
+     *                           cache.
+     */
+    protected void setAvailabilityMaxAge(final int availabilityMaxAge) {
+        this.availabilityMaxAge = availabilityMaxAge;
+    }
+
+    /**
+     * Returns whether reservations have to pass the waiting room.
+     * 
+     * @return Whether the waiting room is enabled.
+     */
+    public boolean isWaitingRoom() {
+        return this.waitingRoom;
+    }
+
+    /**
+     * Sets whether reservations have to pass the waiting room.
+     * 
+     * @param waitingRoom Whether the waiting room is enabled.
+     */
+    protected void setWaitingRoom(final boolean waitingRoom) {
+        this.waitingRoom = waitingRoom;
+    }
+
+    /**
+     * Returns the number of customers per second and active server admitted by the waiting
+     * room.
+     * 
+     * @return The admission rate.
+     */
+    public int getAdmissionRate() {
+        return this.admissionRate;
+    }
+
+    /**
+     * Sets the number of customers per second and active server admitted by the waiting
+     * room.
+     * 
+     * @param admissionRate The admission rate.
+     */
+    protected void setAdmissionRate(final int admissionRate) {
+        this.admissionRate = admissionRate;
+    }
+
+    /**
+     * Returns the time after which an unused admission expires.
+     * 
+     * @return The admission window in milliseconds.
+     */
+    public int getAdmissionWindow() {
+        return this.admissionWindow;
+    }
+
+    /**
+     * Sets the time after which an unused admission expires.
+     * 
+     * @param admissionWindow The admission window in milliseconds.
+     */
+    protected void setAdmissionWindow(final int admissionWindow) {
+        this.admissionWindow = admissionWindow;
+    }
+
+    /**
+     * Returns the number of requests per second a customer may send to the servers.
+     * 
+     * @return The customer rate, {@code 0} means the rate is not limited.
+     */
+    public int getCustomerRate() {
+        return this.customerRate;
+    }
+
+    /**
+     * Sets the number of requests per second a customer may send to the servers.
+     * 
+     * @param customerRate The customer rate, {@code 0} disables the limit.
+     */
+    protected void setCustomerRate(final int customerRate) {
+        this.customerRate = customerRate;
+    }
+
+    /**
+     * Returns the number of requests a customer may send to the servers at once.
+     * 
+     * @return The customer burst.
+     */
+    public int getCustomerBurst() {
+        return this.customerBurst;
+    }
+
+    /**
+     * Sets the number of requests a customer may send to the servers at once.
+     * 
+     * @param customerBurst The customer burst.
+     */
+    protected void setCustomerBurst(final int customerBurst) {
+        this.customerBurst = customerBurst;
+    }
 }
@@ -1,6 +1,9 @@
 package com.pseuco.np22.request;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 import com.sun.net.httpserver.HttpExchange;
@@ -134,6 +137,75 @@ public class Request {
          */
         ABORT_PURCHASE,
 
+        /**
+         * <p>
+         * Extends a reservation of a ticket or a group of tickets such that it does not
+         * expire while the customer is still checking out.
+         * </p>
+         * 
+         * <p>
+         * 📌 Hint: Should be processed by a server.
+         * </p>
+         */
+        EXTEND_RESERVATION,
+
+        /**
+         * <p>
+         * Subscribes to a stream of server-sent events carrying the approximate number of
+         * available tickets whenever it changes.
+         * </p>
+         * 
+         * <p>
+         * 📌 Hint: Should be processed by the load balancer.
+         * </p>
+         */
+        AVAILABILITY_STREAM,
+
+        /**
+         * <p>
+         * Retrieves the position of the customer in the waiting room, {@code 0} once the
+         * customer has been admitted.
+         * </p>
+         * 
+         * <p>
+         * 📌 Hint: Should be processed by the load balancer.
+         * </p>
+         */
+        QUEUE_STATUS,
+
+        /**
+         * <p>
+         * Reserves the given number of tickets at once for a group.
+         * </p>
+         * 
+         * <p>
+         * 📌 Hint: Should be processed by a server.
+         * </p>
+         */
+        RESERVE_TICKETS,
+
+        /**
+         * <p>
+         * Buys all tickets of a previously reserved group.
+         * </p>
+         * 
+         * <p>
+         * 📌 Hint: Should be processed by a server.
+         * </p>
+         */
+        BUY_TICKETS,
+
+        /**
+         * <p>
+         * Aborts the purchase of all tickets of a previously reserved group.
+         * </p>
+         * 
+         * <p>
+         * 📌 Hint: Should be processed by a server.
+         * </p>
+         */
+        ABORT_TICKETS,
+
         /**
          * <p>
          * Useful for sending information for debugging.
@@ -153,6 +225,11 @@ public class Request {
          * @return An optional {@link Kind} which is empty in case the path is invalid.
          */
         public static Optional<Kind> fromPath(final String path) {
+            // Requests for a specific event carry its id as prefix of the path.
+            final var eventId = eventIdFromPath(path);
+            if (eventId.isPresent()) {
+                return fromPath("/api" + path.substring(EVENT_PATH_PREFIX.length() + eventId.get().length()));
+            }
             switch (path) {
                 case "/api/admin/num_servers":
                     return Optional.of(Kind.NUM_SERVERS);
@@ -161,6 +238,10 @@ public class Request {
 
                 case "/api/num_available_tickets":
                     return Optional.of(Kind.NUM_AVAILABLE_TICKETS);
+                case "/api/availability_stream":
+                    return Optional.of(Kind.AVAILABILITY_STREAM);
+                case "/api/queue_status":
+                    return Optional.of(Kind.QUEUE_STATUS);
 
                 case "/api/reserve_ticket":
                     return Optional.of(Kind.RESERVE_TICKET);
@@ -168,6 +249,15 @@ public class Request {
                     return Optional.of(Kind.BUY_TICKET);
                 case "/api/abort_purchase":
                     return Optional.of(Kind.ABORT_PURCHASE);
+                case "/api/extend_reservation":
+                    return Optional.of(Kind.EXTEND_RESERVATION);
+
+                case "/api/reserve_tickets":
+                    return Optional.of(Kind.RESERVE_TICKETS);
+                case "/api/buy_tickets":
+                    return Optional.of(Kind.BUY_TICKETS);
+                case "/api/abort_tickets":
+                    return Optional.of(Kind.ABORT_TICKETS);
             }
             if (path.startsWith("/api/debug")) {
                 return Optional.of(Kind.DEBUG);
@@ -176,6 +266,38 @@ public class Request {
         }
     }
 
+    /**
+     * The prefix of paths addressing a specific event, followed by the id of the event.
+     */
+    public static final String EVENT_PATH_PREFIX = "/api/events/";
+
+    /**
+     * The name of the HTTP header for the event id.
+     */
+    public static final String EVENT_HEADER_NAME = "X-Event-Id";
+
+    /**
+     * The name of the HTTP header for the tier of the customer.
+     */
+    public static final String TIER_HEADER_NAME = "X-Customer-Tier";
+
+    /**
+     * Extracts the event id from a path of the form {@code /api/events/<id>/...}.
+     * 
+     * @param path The path.
+     * @return An optional event id which is empty in case the path addresses no event.
+     */
+    private static Optional<String> eventIdFromPath(final String path) {
+        if (!path.startsWith(EVENT_PATH_PREFIX)) {
+            return Optional.empty();
+        }
+        final var end = path.indexOf('/', EVENT_PATH_PREFIX.length());
+        if (end <= EVENT_PATH_PREFIX.length()) {
+            return Optional.empty();
+        }
+        return Optional.of(path.substring(EVENT_PATH_PREFIX.length(), end));
+    }
+
     /**
      * The method of the request.
      */
@@ -200,6 +322,11 @@ public class Request {
      */
     private Optional<ServerId> serverId;
 
+    /**
+     * The id of the event the request is for, empty for the default event.
+     */
+    private final Optional<String> eventId;
+
     /**
      * Tracks whether a response has already been sent.
      */
@@ -220,6 +347,9 @@ public class Request {
         this.customerId = CustomerId.fromHttpExchange(this.exchange);
         // Extract any provided server id.
         this.serverId = ServerId.fromHttpExchange(this.exchange);
+        // Extract the event id, the header takes precedence over the path.
+        final var header = this.exchange.getRequestHeaders().getFirst(EVENT_HEADER_NAME);
+        this.eventId = header != null && !header.isEmpty() ? Optional.of(header) : eventIdFromPath(this.getPath());
     }
 
     /**
@@ -258,6 +388,24 @@ public class Request {
         return this.customerId;
     }
 
+    /**
+     * Returns the id of the event the request is for if there is any.
+     * 
+     * @return The id of the event or an empty {@link Optional} for the default event.
+     */
+    public Optional<String> getEventId() {
+        return this.eventId;
+    }
+
+    /**
+     * Returns the tier of the customer if the client provided one.
+     * 
+     * @return The tier of the customer if there is any.
+     */
+    public Optional<String> getCustomerTier() {
+        return Optional.ofNullable(this.exchange.getRequestHeaders().getFirst(TIER_HEADER_NAME));
+    }
+
     /**
      * Returns the {@link ServerId} associated with the request if there is any.
      * 
@@ -313,6 +461,41 @@ public class Request {
         }
     }
 
+    /**
+     * <p>
+     * Tries to read a list of integers separated by whitespace or commas from the body of
+     * the request.
+     * </p>
+     * 
+     * <p>
+     * In case the browser did not provide a list of integers, an empty {@link Optional} is
+     * returned.
+     * </p>
+     * 
+     * <p>
+     * 📌 Hint: This method has side effects and should be called only once on each request.
+     * </p>
+     * 
+     * @return The integers if there are any.
+     */
+    public Optional<List<Integer>> readInts() {
+        try {
+            final var body = new String(this.exchange.getRequestBody().readAllBytes()).trim();
+            if (body.isEmpty()) {
+                return Optional.empty();
+            }
+            final List<Integer> integers = new ArrayList<>();
+            for (final var part : body.split("[\\s,]+")) {
+                integers.add(Integer.parseInt(part));
+            }
+            return Optional.of(integers);
+        } catch (IOException error) {
+            return Optional.empty();
+        } catch (NumberFormatException error) {
+            return Optional.empty();
+        }
+    }
+
     /**
      * <p>
      * Sends a response to the client.
@@ -378,6 +561,26 @@ public class Request {
         this.respond(200, Integer.toString(integer));
     }
 
+    /**
+     * <p>
+     * Responds with a list of integers, e.g., the numbers of the tickets of a group.
+     * </p>
+     * 
+     * <p>
+     * This method blocks until the response has been sent.
+     * </p>
+     * 
+     * @param integers The integers to be sent to the client, one per line.
+     */
+    public void respondWithInts(final Iterable<Integer> integers) {
+        final var list = new StringBuilder();
+        for (final var integer : integers) {
+            list.append(integer);
+            list.append('\n');
+        }
+        this.respond(200, list.toString());
+    }
+
     /**
      * <p>
      * Responds with an arbitrary string.
@@ -410,6 +613,95 @@ public class Request {
         this.respond(200, "SOLD OUT");
     }
 
+    /**
+     * <p>
+     * Responds with the position of the customer in the waiting room.
+     * </p>
+     * 
+     * <p>
+     * Use this method to respond to a reservation request of a customer who has not been
+     * admitted yet. The client is told to poll its position again after a second.
+     * </p>
+     * 
+     * <p>
+     * This method blocks until the response has been sent.
+     * </p>
+     * 
+     * @param position The position of the customer, starting at {@code 1}.
+     */
+    public void respondWithQueuePosition(final int position) {
+        this.exchange.getResponseHeaders().set("Retry-After", "1");
+        this.respond(202, Integer.toString(position));
+    }
+
+    /**
+     * <p>
+     * Starts a stream of server-sent events ({@code text/event-stream}).
+     * </p>
+     * 
+     * <p>
+     * The connection stays open until the returned stream is closed, events may be written
+     * to it from any thread afterwards.
+     * </p>
+     * 
+     * @return The stream to write the events to.
+     * @throws IOException When the response headers cannot be sent.
+     */
+    public OutputStream respondWithEventStream() throws IOException {
+        if (this.responseSent) {
+            System.err.println("A response has been sent more than once. Terminating!");
+            System.exit(1);
+        }
+        this.responseSent = true;
+
+        final var headers = this.exchange.getResponseHeaders();
+        headers.set("Content-Type", "text/event-stream");
+        headers.set("Cache-Control", "no-cache");
+        // The length of the stream is unknown, so the response is sent in chunks.
+        this.exchange.sendResponseHeaders(200, 0);
+        return this.exchange.getResponseBody();
+    }
+
+    /**
+     * <p>
+     * Responds with an error indicating that the system is overloaded.
+     * </p>
+     * 
+     * <p>
+     * The client is told to retry after the given number of seconds.
+     * </p>
+     * 
+     * <p>
+     * This method blocks until the response has been sent.
+     * </p>
+     * 
+     * @param retryAfter The number of seconds after which the client should retry.
+     */
+    public void respondWithUnavailable(final int retryAfter) {
+        this.exchange.getResponseHeaders().set("Retry-After", Integer.toString(retryAfter));
+        this.respond(503, "Service Unavailable");
+    }
+
+    /**
+     * <p>
+     * Responds with an error indicating that the customer sends too many requests.
+     * </p>
+     * 
+     * <p>
+     * The client is told to retry after the given number of seconds.
+     * </p>
+     * 
+     * <p>
+     * This method blocks until the response has been sent.
+     * </p>
+     * 
+     * @param retryAfter The number of seconds after which the client should retry.
+     */
+    public void respondWithTooManyRequests(final int retryAfter) {
+        this.exchange.getResponseHeaders().set("Retry-After", Integer.toString(retryAfter));
+        this.respond(429, "Too Many Requests");
+    }
+
     /**
      * <p>
      * Responds with a list of server ids.
@@ -34,6 +34,26 @@ public class ServerId {
         return new ServerId(UUID.randomUUID());
     }
 
+    /**
+     * <p>
+     * Constructs a server id which names the slot of the server in the server table and the
+     * generation of the slot, such that the server is found without a lookup structure.
+     * </p>
+     * 
+     * <p>
+     * The slot and the generation form the upper half of the UUID, the salt forms the lower
+     * half and tells ids of different processes apart.
+     * </p>
+     * 
+     * @param slot       The slot of the server.
+     * @param generation The generation of the slot, incremented whenever the slot is reused.
+     * @param salt       The salt of the process.
+     * @return The server id.
+     */
+    public static ServerId fromSlot(final int slot, final int generation, final long salt) {
+        return new ServerId(new UUID(((long) slot << 32) | (generation & 0xffffffffL), salt));
+    }
+
     /**
      * <p>
      * Extracts a server id from an {@link HttpExchange}.
@@ -88,6 +108,16 @@ public class ServerId {
         return this.id;
     }
 
+    /**
+     * Returns the slot of the server in the server table, only meaningful for ids
+     * constructed with {@link #fromSlot}.
+     * 
+     * @return The slot of the server.
+     */
+    public int getSlot() {
+        return (int) (this.id.getMostSignificantBits() >>> 32);
+    }
+
     @Override
     public int hashCode() {
         return this.id.hashCode();
@@ -0,0 +1,141 @@
+package com.pseuco.np22.rocket;
+
+/**
+ * <p>
+ * The {@link Autoscaler} scales the number of servers according to the load.
+ * </p>
+ *
+ * <p>
+ * Every sampling interval, it looks at the mailbox depths of the active servers, the
+ * request rate and the latency percentiles recorded in the {@link Metrics}. The system is
+ * scaled up as soon as it is overloaded and scaled down only after it has been underloaded
+ * for several consecutive samples. The thresholds for both directions are apart from each
+ * other and every scaling decision is followed by a cooldown, such that the number of
+ * servers does not oscillate.
+ * </p>
+ */
+public class Autoscaler implements Runnable {
+    /**
+     * The interval in which the load is sampled in milliseconds.
+     */
+    private static final long SAMPLE_INTERVAL = 1000;
+
+    /**
+     * The time after a scaling decision in which no further decision is made in milliseconds.
+     */
+    private static final long COOLDOWN = 5000;
+
+    /**
+     * The average number of queued requests per server above which we scale up.
+     */
+    private static final int HIGH_DEPTH = 32;
+
+    /**
+     * The average number of queued requests per server below which we may scale down.
+     */
+    private static final int LOW_DEPTH = 2;
+
+    /**
+     * The number of consecutive underloaded samples after which we scale down.
+     */
+    private static final int DOWN_SAMPLES = 5;
+
+    /**
+     * The {@link Coordinator} of the ticket sales system.
+     */
+    private final Coordinator coordinator;
+
+    /**
+     * The minimal number of servers.
+     */
+    private final int minServers;
+
+    /**
+     * The maximal number of servers.
+     */
+    private final int maxServers;
+
+    /**
+     * The targeted 99th percentile of the request latency in microseconds.
+     */
+    private final long targetLatency;
+
+    /**
+     * The number of consecutive underloaded samples.
+     */
+    private int underloadedSamples = 0;
+
+    /**
+     * The system time of the last scaling decision.
+     */
+    private long lastScaled = 0;
+
+    /**
+     * The number of requests at the last sample.
+     */
+    private long lastRequests = 0;
+
+    /**
+     * The request rate at the last sample in requests per second.
+     */
+    private double lastRate = 0;
+
+    /**
+     * Constructs a new {@link Autoscaler}.
+     *
+     * @param coordinator The {@link Coordinator} of the ticket sales system.
+     */
+    public Autoscaler(final Coordinator coordinator) {
+        this.coordinator = coordinator;
+        this.minServers = coordinator.getConfig().getMinServers();
+        this.maxServers = coordinator.getConfig().getMaxServers();
+        this.targetLatency = coordinator.getConfig().getTargetLatency() * 1000L;
+    }
+
+    /**
+     * Samples the load and scales the system if necessary.
+     */
+    private void sample() {
+        final var metrics = this.coordinator.getMetrics();
+        final var numServers = this.coordinator.getNumOfServers();
+        final var depth = this.coordinator.getQueueLength() / (double) Math.max(numServers, 1);
+        final var requests = metrics.getRequests();
+        final var rate = (requests - this.lastRequests) * 1000.0 / SAMPLE_INTERVAL;
+        final var p99 = Metrics.percentile(metrics.takeLatencies(), 0.99);
+        final var isRising = rate > this.lastRate;
+        this.lastRequests = requests;
+        this.lastRate = rate;
+
+        final var isOverloaded = depth > HIGH_DEPTH || p99 > this.targetLatency;
+        final var isUnderloaded = depth < LOW_DEPTH && p99 < this.targetLatency / 2 && !isRising;
+        this.underloadedSamples = isUnderloaded ? this.underloadedSamples + 1 : 0;
+
+        final var now = System.currentTimeMillis();
+        if (now - this.lastScaled < COOLDOWN) {
+            return;
+        }
+        if (isOverloaded && numServers < this.maxServers) {
+            // Grow by half of the current servers to catch up with a rush quickly.
+            this.coordinator.scale(Math.min(this.maxServers, numServers + Math.max(1, numServers / 2)));
+            this.lastScaled = now;
+        } else if (this.underloadedSamples >= DOWN_SAMPLES && numServers > this.minServers) {
+            // Shrink slowly, one server at a time.
+            this.coordinator.scale(numServers - 1);
+            this.lastScaled = now;
+            this.underloadedSamples = 0;
+        }
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                Thread.sleep(SAMPLE_INTERVAL);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                return;
+            }
+            this.sample();
+        }
+    }
+}
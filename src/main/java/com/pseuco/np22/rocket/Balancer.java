@@ -1,8 +1,14 @@
 package com.pseuco.np22.rocket;
 
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
 import com.pseuco.np22.request.Request;
 import com.pseuco.np22.request.RequestHandler;
 import com.pseuco.np22.request.ServerId;
+import com.pseuco.np22.rocket.Server.MsgClearReservations;
 import com.pseuco.np22.rocket.Server.MsgProcessRequest;
 
 /**
@@ -28,6 +34,11 @@ public class Balancer implements RequestHandler {
      */
     private final Coordinator coordinator;
 
+    /**
+     * Limits the rate of requests of every customer.
+     */
+    private final RateLimiter limiter;
+
     /**
      * Constructs a new {@link Balancer}.
      * 
@@ -35,28 +46,198 @@ public class Balancer implements RequestHandler {
      */
     public Balancer(final Coordinator coordinator) {
         this.coordinator = coordinator;
+        this.limiter = new RateLimiter(coordinator);
         // Scale to the number of initial servers.
         this.coordinator.scale(this.coordinator.getConfig().getInitialServers());
     }
 
+    /**
+     * The number of seconds after which clients should retry when servers are overloaded.
+     */
+    protected static final int RETRY_AFTER = 1;
+
+    /**
+     * An estimate of the available tickets of an event published by the {@link Estimator}.
+     */
+    private static class CachedAvailability {
+        private final int numAvailable;
+        private final long cachedAt;
+
+        private CachedAvailability(final int numAvailable, final long cachedAt) {
+            this.numAvailable = numAvailable;
+            this.cachedAt = cachedAt;
+        }
+    }
+
+    /**
+     * The latest estimates of the available tickets by event id.
+     */
+    private final ConcurrentHashMap<String, CachedAvailability> availability = new ConcurrentHashMap<>();
+
+    /**
+     * Caches an estimate of the available tickets of an event, such that polls are answered
+     * without involving a server while the estimate is fresh.
+     * 
+     * @param eventId      The id of the event.
+     * @param numAvailable The estimated number of available tickets.
+     */
+    public void cacheAvailability(final String eventId, final int numAvailable) {
+        this.availability.put(eventId, new CachedAvailability(numAvailable, System.currentTimeMillis()));
+    }
+
+    /**
+     * Answers a poll for the available tickets from the cache if the cached estimate is
+     * fresh enough.
+     * 
+     * @return Whether the request has been answered.
+     */
+    private boolean answerFromCache(Request request) {
+        final var maxAge = this.coordinator.getConfig().getAvailabilityMaxAge();
+        final var cached = this.availability.get(request.getEventId().orElse(Event.DEFAULT_ID));
+        if (maxAge <= 0 || cached == null || System.currentTimeMillis() - cached.cachedAt > maxAge) {
+            return false;
+        }
+        this.assignServer(request);
+        request.respondWithInt(cached.numAvailable);
+        return true;
+    }
+
+    /**
+     * The minimal time between two requests to the servers to expire their reservations
+     * while the balancer answers reservations with sold out, in milliseconds.
+     */
+    private static final long EXPIRY_CHECK_INTERVAL = 100;
+
+    /**
+     * The system time of the last request to the servers to expire their reservations.
+     */
+    private final AtomicLong lastExpiryCheck = new AtomicLong();
+
+    /**
+     * Answers a reservation with sold out if every ticket of the event is reserved or sold,
+     * unless the customer may hold one of the reservations. Such customers are told so by
+     * their server as before.
+     * 
+     * @return Whether the request has been answered.
+     */
+    private boolean answerSoldOut(Request request) {
+        final var event = this.coordinator.getEvent(request.getEventId().orElse(Event.DEFAULT_ID));
+        if (event == null || !event.isSoldOut() || this.mayHoldReservation(request)) {
+            return false;
+        }
+        // Servers only expire reservations when they process a message. As we keep the
+        // reservations away from them, we ask them to do so from time to time such that
+        // expired tickets end the sell-out.
+        final var now = System.currentTimeMillis();
+        final var last = this.lastExpiryCheck.get();
+        if (now - last >= EXPIRY_CHECK_INTERVAL && this.lastExpiryCheck.compareAndSet(last, now)) {
+            for (Server server : this.coordinator.getLiveServers()) {
+                server.getMailbox().sendHighPriority(new MsgClearReservations());
+            }
+        }
+        this.assignServer(request);
+        request.respondWithSoldOut();
+        return true;
+    }
+
+    /**
+     * Checks whether the customer of a request may hold a reservation, i.e., the request
+     * names a server which is alive or has handed over its reservations to a server which
+     * is, or the customer holds a reservation recovered after a restart.
+     */
+    private boolean mayHoldReservation(Request request) {
+        if (request.getServerId().isPresent()) {
+            final var target = request.getServerId().get();
+            if (this.coordinator.lookupServer(target) != null
+                    || this.coordinator.lookupServer(this.coordinator.resolveForward(target)) != null) {
+                return true;
+            }
+        }
+        return this.coordinator.findRecoveredOwner(request.getCustomerId()) != null;
+    }
+
+    /**
+     * Sets the server of a request answered by the balancer like a server would.
+     */
+    private void assignServer(Request request) {
+        // Keep the customer at its server as long as that server holds its reservations,
+        // otherwise assign an active server.
+        if (request.getServerId().isPresent()) {
+            ServerId target = request.getServerId().get();
+            if (this.coordinator.lookupServer(target) == null) {
+                target = this.coordinator.resolveForward(target);
+            }
+            if (this.coordinator.lookupServer(target) == null) {
+                // the id may name a server of the process before a restart
+                final var owner = this.coordinator.findRecoveredOwner(request.getCustomerId());
+                target = owner == null ? target : owner;
+            }
+            if (this.coordinator.lookupServer(target) != null) {
+                request.setServerId(target);
+                return;
+            }
+        }
+        request.setServerId(this.coordinator.pickRandomServer());
+    }
+
     /**
      * Get random active server and send message to its Mail Box, indicate if the Message is
-     * sent, otherwise try to get other random active server ...
-     */
-    private void sendMessageToActivServer(Request request) {
-        boolean isItSent = false;
-        while (!isItSent) {
-            // get random server from the list of active servers
-            ServerId associatedServerID = this.coordinator.pickRandomServer();
-            // correlate a customar with specific server
-            request.setServerId(associatedServerID);
-            // constructing MsgProcessRequest with request
-            Command<Server> message = new MsgProcessRequest(request);
-            // get the mail box of this picked server
-            var mailBoxOfPickedServer = this.coordinator.getServerMailbox(associatedServerID);
-            // send this message with low priority
-            isItSent = mailBoxOfPickedServer.sendLowPriority(message);
+     * sent, otherwise try the other active servers. If the mailboxes of all active servers
+     * are full, the request is rejected with a 503 (Service Unavailable).
+     * 
+     * @return Whether the request reached a server.
+     */
+    private boolean sendMessageToActivServer(Request request, long receivedAt) {
+        while (true) {
+            List<ServerId> activeServerIds = this.coordinator.getActiveServerIds();
+            // start at a random server such that the load is spread evenly, in run-to-completion
+            // mode the customer is hashed to a server such that its requests meet its reservation
+            int start = this.coordinator.getConfig().isRunToCompletion()
+                    ? Math.floorMod(request.getCustomerId().hashCode(), activeServerIds.size())
+                    : ThreadLocalRandom.current().nextInt(activeServerIds.size());
+            boolean isAnyClosed = false;
+            for (int i = 0; i < activeServerIds.size(); i++) {
+                ServerId associatedServerID = activeServerIds.get((start + i) % activeServerIds.size());
+                // the server correlates the customer with itself once it processes the request,
+                // so a rejected request does not point the client to a full server
+                // constructing MsgProcessRequest with request
+                Command<Server> message = new MsgProcessRequest(request, receivedAt);
+                // send this message with low priority to the picked server
+                switch (this.deliver(this.coordinator.lookupServer(associatedServerID), message)) {
+                    case SENT:
+                        return true;
+                    case CLOSED:
+                        // the server terminated in the meantime, we have to try again
+                        isAnyClosed = true;
+                        break;
+                    case FULL:
+                        break;
+                }
+            }
+            if (!isAnyClosed) {
+                // every active server is overloaded, so shed the request right away instead of
+                // letting it wait until the client times out
+                this.coordinator.getMetrics().countShed();
+                request.respondWithUnavailable(RETRY_AFTER);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Hands a request over to a server. In run-to-completion mode, the calling thread
+     * processes the request itself if the server is idle, which saves the hand-off to the
+     * thread of the server, otherwise the request is queued as usual.
+     */
+    private Mailbox.SendResult deliver(Server server, Command<Server> message) {
+        if (server == null) {
+            // the server terminated in the meantime
+            return Mailbox.SendResult.CLOSED;
         }
+        if (this.coordinator.getConfig().isRunToCompletion() && server.tryProcess(message)) {
+            return Mailbox.SendResult.SENT;
+        }
+        return server.getMailbox().sendLowPriority(message);
     }
 
     @Override
@@ -122,75 +303,175 @@ public class Balancer implements RequestHandler {
                 break;
             }
 
+            case AVAILABILITY_STREAM: {
+                /**
+                 * The broadcaster takes over the connection and pushes the estimates of
+                 * the estimator, so watching clients cause no work for the servers.
+                 */
+                final var eventId = request.getEventId().orElse(Event.DEFAULT_ID);
+                if (this.coordinator.getEvent(eventId) == null) {
+                    request.respondWithError("Unknown event!");
+                } else {
+                    this.coordinator.getBroadcaster().subscribe(eventId, request);
+                }
+                break;
+            }
+
+            case QUEUE_STATUS: {
+                /**
+                 * Customers in the waiting room poll their position with this request, so
+                 * it is answered without a server.
+                 */
+                this.coordinator.getWaitingRoom().respondWithStatus(request);
+                break;
+            }
+
             case DEBUG: {
                 /**
                  * You are free to handle this request however you like, e.g., by sending
                  * some useful debugging information to the client.
                  */
-                request.respondWithString("Happy Debugging! 🚫🐛");
+                request.respondWithString(this.coordinator.getMetrics().toString());
                 break;
             }
 
-            default:
+            case RESERVE_TICKET:
+            case RESERVE_TICKETS: {
                 /**
-                 * The remaining requests must be handed over to a server.
-                 * 
-                 * Hint: Your implementation must be able to handle cases where a server
-                 * already terminated or is in the process of terminating when a request
-                 * for that server hits the load balancer. In case the server has already
-                 * terminated, the balancer should assign a new server to the client.
-                 * 
-                 * You must use the coordinator to obtain the mailbox of the server which
-                 * should handle the request. You must then use the mailbox of this server
-                 * to deliver the request as a message with low priority. Using our
-                 * skeleton this means constructing and sending a `MsgProcessRequest`
-                 * message to the server.
+                 * Once every ticket is reserved or sold, reservations are answered right
+                 * away, so the herd arriving after the sell-out does not reach the servers.
+                 * Before, customers only reach the servers once the waiting room admits them.
                  */
+                if (this.answerSoldOut(request)) {
+                    break;
+                }
+                final var waitingRoom = this.coordinator.getWaitingRoom();
+                if (!waitingRoom.isEnabled()) {
+                    this.forwardToServer(request);
+                } else if (waitingRoom.admit(request) && this.forwardToServer(request)) {
+                    // a request rejected with a 429 or 503 keeps the admission for the retry
+                    waitingRoom.enter(request);
+                }
+                break;
+            }
 
-                // check if the request of client is worked from known Server
-                if (!request.getServerId().isEmpty()) {
-                    // check if this server is now aktive or terminated
-                    ServerId ID_associatedServerKnown = request.getServerId().get();
-
-                    boolean isServerStillActive = this.coordinator.getActiveServerIds()
-                            .contains(ID_associatedServerKnown);
-                    boolean isServerInProcesOfTermination = this.coordinator.getinTerminationServersIDs()
-                            .contains(ID_associatedServerKnown);
-                    if (isServerStillActive || isServerInProcesOfTermination) {
-                        // constructing MsgProcessRequest with request
-                        Command<Server> message = new MsgProcessRequest(request);
-                        var mailBoxOfassociatedServerKnown = this.coordinator
-                                .getServerMailbox(ID_associatedServerKnown);
-                        boolean isItSent = mailBoxOfassociatedServerKnown.sendLowPriority(message);
-                        /**
-                         * indicate if the message is sent,
-                         * otherwise try to get other random active server
-                         * to handle this request
-                         */
-                        if (!isItSent) {
-                            sendMessageToActivServer(request);
+            case NUM_AVAILABLE_TICKETS: {
+                /**
+                 * The answer is an estimate anyway, so polls are answered with the estimate
+                 * of the estimator as long as it is fresh and do not compete with the
+                 * reservations for the servers.
+                 */
+                if (!this.answerFromCache(request)) {
+                    this.forwardToServer(request);
+                }
+                break;
+            }
+
+            default:
+                this.forwardToServer(request);
+                break;
+        }
+
+    }
+
+    /**
+     * Hands a request over to a server.
+     * 
+     * @return Whether the request reached a server, otherwise it has been rejected with a
+     *         429 (Too Many Requests) or a 503 (Service Unavailable).
+     */
+    private boolean forwardToServer(Request request) {
+        /**
+         * The remaining requests must be handed over to a server.
+         * 
+         * Hint: Your implementation must be able to handle cases where a server
+         * already terminated or is in the process of terminating when a request
+         * for that server hits the load balancer. In case the server has already
+         * terminated, the balancer should assign a new server to the client.
+         * 
+         * You must use the coordinator to obtain the mailbox of the server which
+         * should handle the request. You must then use the mailbox of this server
+         * to deliver the request as a message with low priority. Using our
+         * skeleton this means constructing and sending a `MsgProcessRequest`
+         * message to the server.
+         */
+
+        // reject customers flooding the servers before their requests take up room in
+        // the mailboxes
+        if (this.limiter.isEnabled() && !this.limiter.tryAcquire(request.getCustomerId())) {
+            this.coordinator.getMetrics().countLimited();
+            request.respondWithTooManyRequests(RETRY_AFTER);
+            return false;
+        }
+        // remember when the request arrived such that servers can drop it once the
+        // client has most likely given up
+        long receivedAt = System.nanoTime();
+        this.coordinator.getMetrics().countRequest();
+        // check if the request of client is worked from known Server
+        if (!request.getServerId().isEmpty()) {
+            ServerId ID_associatedServerKnown = request.getServerId().get();
+            while (true) {
+                // the id names the slot of the server, so a server which has not terminated
+                // yet is found right away
+                Server target = this.coordinator.lookupServer(ID_associatedServerKnown);
+                if (target == null) {
+                    // a drained server handed over its reservations to another server, so
+                    // follow the forward to that server
+                    ServerId ID_target = this.coordinator.resolveForward(ID_associatedServerKnown);
+                    target = this.coordinator.lookupServer(ID_target);
+                    if (target == null) {
+                        // the id may name a server of the process before a restart, whose
+                        // reservations have been recovered by one of our servers
+                        final var owner = this.coordinator.findRecoveredOwner(request.getCustomerId());
+                        if (owner != null) {
+                            ID_target = owner;
+                            target = this.coordinator.lookupServer(owner);
                         }
-                    } else {
+                    }
+                    if (target == null) {
                         /**
                          * In this case the server is terminated, so then obtain a
                          * random active server to handle this request and be sure
                          * that the message is sent to Mailbox of activ server
                          */
-                        sendMessageToActivServer(request);
+                        return sendMessageToActivServer(request, receivedAt);
                     }
-                } else {
-
-                    /**
-                     * In this case the request of client has no
-                     * connection with any server, so then obtain a
-                     * random active server to handle this request and be sure
-                     * that the message is sent to Mailbox of activ server
-                     */
-                    sendMessageToActivServer(request);
+                    request.setServerId(ID_target);
                 }
-                break;
-        }
+                // constructing MsgProcessRequest with request
+                Command<Server> message = new MsgProcessRequest(request, receivedAt);
+                var result = this.deliver(target, message);
+                /**
+                 * indicate if the message is sent, otherwise the server has been
+                 * drained or terminated in the meantime and we try again. If the server
+                 * is overloaded, we cannot move the customer since its reservation is
+                 * kept there.
+                 */
+                if (result == Mailbox.SendResult.FULL) {
+                    this.coordinator.getMetrics().countShed();
+                    request.respondWithUnavailable(RETRY_AFTER);
+                    return false;
+                }
+                if (result != Mailbox.SendResult.CLOSED) {
+                    return true;
+                }
+                // a drained server registers its forward before it closes its mailbox
+                ServerId ID_forward = this.coordinator.resolveForward(ID_associatedServerKnown);
+                if (!ID_forward.equals(ID_associatedServerKnown)) {
+                    ID_associatedServerKnown = ID_forward;
+                    request.setServerId(ID_forward);
+                }
+            }
+        } else {
 
+            /**
+             * In this case the request of client has no
+             * connection with any server, so then obtain a
+             * random active server to handle this request and be sure
+             * that the message is sent to Mailbox of activ server
+             */
+            return sendMessageToActivServer(request, receivedAt);
+        }
     }
 
 }
@@ -0,0 +1,328 @@
+package com.pseuco.np22.rocket;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.pseuco.np22.request.Request;
+
+/**
+ * <p>
+ * Pushes the estimated number of available tickets to clients subscribed to the
+ * availability stream, such that clients do not have to poll the servers.
+ * </p>
+ *
+ * <p>
+ * The {@link Estimator} publishes its estimate of every event after each round. Only the
+ * latest estimate of an event is kept, and the broadcaster sends it to the subscribers of
+ * the event at most once per stream interval and only if it has changed. Hence, the work
+ * of the broadcaster grows with the number of subscribers but not with the number of
+ * estimates, and the servers do not notice the subscribers at all.
+ * </p>
+ *
+ * <p>
+ * The subscribers are only touched by the broadcaster thread, new subscribers are handed
+ * over by the threads of the load balancer through a queue.
+ * </p>
+ *
+ * <p>
+ * The streams of the HTTP server block while the TCP buffer of a client is full, so the
+ * broadcaster thread never writes itself. It hands the events to a small pool of writers
+ * and keeps at most one unsent event per subscriber, a newer estimate replaces an older
+ * one. A subscriber whose write does not complete within the write timeout is dropped and
+ * the pool gets a replacement for the writer stuck with it, such that a stalled client
+ * never holds up the other subscribers.
+ * </p>
+ */
+public class Broadcaster implements Runnable {
+    /**
+     * The interval in which a comment is sent to idle subscribers in milliseconds, such that
+     * closed connections are detected and proxies do not time out.
+     */
+    private static final long KEEPALIVE_INTERVAL = 15000;
+
+    /**
+     * The time in milliseconds after which a subscriber whose write has not completed is
+     * dropped.
+     */
+    private static final long WRITE_TIMEOUT = 5000;
+
+    /**
+     * The number of writers which are not stuck with a dropped subscriber.
+     */
+    private static final int NUM_WRITERS = 4;
+
+    /**
+     * Marks the write of a subscriber which has been given up by the broadcaster.
+     */
+    private static final long ABANDONED = -1;
+
+    /**
+     * A client subscribed to the availability of an event.
+     */
+    private static class Subscriber {
+        /**
+         * The id of the event the client is subscribed to.
+         */
+        private final String eventId;
+
+        /**
+         * The stream of the client.
+         */
+        private final OutputStream stream;
+
+        /**
+         * The event to write next, {@code null} if there is none.
+         */
+        private final AtomicReference<byte[]> pending = new AtomicReference<>();
+
+        /**
+         * Whether a writer has been scheduled for the subscriber.
+         */
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        /**
+         * The system time the current write started at, {@code 0} if there is no write in
+         * progress and {@link #ABANDONED} if the broadcaster has given up on the write.
+         */
+        private final AtomicLong writingSince = new AtomicLong(0);
+
+        /**
+         * Whether the subscriber has been dropped.
+         */
+        private volatile boolean dropped = false;
+
+        private Subscriber(final String eventId, final OutputStream stream) {
+            this.eventId = eventId;
+            this.stream = stream;
+        }
+    }
+
+    /**
+     * The minimal time between two updates of an event in milliseconds.
+     */
+    private final long interval;
+
+    /**
+     * The latest published estimate by event id.
+     */
+    private final ConcurrentHashMap<String, Integer> latest = new ConcurrentHashMap<>();
+
+    /**
+     * Subscribers which have not received an estimate yet.
+     */
+    private final ConcurrentLinkedQueue<Subscriber> joining = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The subscribers by event id, only used by the broadcaster thread.
+     */
+    private final Map<String, List<Subscriber>> subscribers = new HashMap<>();
+
+    /**
+     * The estimate last sent to the subscribers by event id, only used by the broadcaster
+     * thread.
+     */
+    private final Map<String, Integer> sent = new HashMap<>();
+
+    /**
+     * The writers of the events, daemon threads such that stuck writers do not keep the
+     * process alive.
+     */
+    private final ThreadPoolExecutor writers = new ThreadPoolExecutor(NUM_WRITERS, NUM_WRITERS, 60,
+            TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                final var thread = new Thread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * Lock protecting the size of the pool of writers.
+     */
+    private final ReentrantLock writersLock = new ReentrantLock();
+
+    /**
+     * Constructs a new {@link Broadcaster}.
+     *
+     * @param coordinator The {@link Coordinator} of the ticket sales system.
+     */
+    public Broadcaster(final Coordinator coordinator) {
+        this.interval = coordinator.getConfig().getStreamInterval();
+    }
+
+    /**
+     * Publishes a new estimate of the available tickets of an event, replacing any estimate
+     * which has not been sent yet.
+     *
+     * @param eventId      The id of the event.
+     * @param numAvailable The estimated number of available tickets.
+     */
+    public void publish(final String eventId, final int numAvailable) {
+        this.latest.put(eventId, numAvailable);
+    }
+
+    /**
+     * Subscribes the client of the given request to the availability of an event.
+     *
+     * @param eventId The id of the event.
+     * @param request The request of the client.
+     */
+    public void subscribe(final String eventId, final Request request) {
+        try {
+            this.joining.add(new Subscriber(eventId, request.respondWithEventStream()));
+        } catch (IOException error) {
+            System.err.println("Warning: Unable to open availability stream.");
+        }
+    }
+
+    /**
+     * Hands an event for a subscriber to the writers, replacing an event which has not been
+     * written yet unless the event is a keepalive.
+     *
+     * @return Whether the subscriber is still connected.
+     */
+    private boolean send(final Subscriber subscriber, final byte[] event, final boolean isKeepalive) {
+        if (subscriber.dropped) {
+            return false;
+        }
+        final var since = subscriber.writingSince.get();
+        if (since > 0 && System.currentTimeMillis() - since > WRITE_TIMEOUT
+                && subscriber.writingSince.compareAndSet(since, ABANDONED)) {
+            // The client does not read, give up on it and replace the writer stuck with it.
+            subscriber.dropped = true;
+            this.resizeWriters(1);
+            return false;
+        }
+        if (isKeepalive) {
+            subscriber.pending.compareAndSet(null, event);
+        } else {
+            subscriber.pending.set(event);
+        }
+        this.schedule(subscriber);
+        return true;
+    }
+
+    /**
+     * Schedules a writer for a subscriber with a pending event unless one is scheduled.
+     */
+    private void schedule(final Subscriber subscriber) {
+        if (subscriber.pending.get() != null && subscriber.scheduled.compareAndSet(false, true)) {
+            this.writers.execute(() -> this.write(subscriber));
+        }
+    }
+
+    /**
+     * Writes the pending events of a subscriber, runs on a writer.
+     */
+    private void write(final Subscriber subscriber) {
+        byte[] event;
+        while (!subscriber.dropped && (event = subscriber.pending.getAndSet(null)) != null) {
+            final var start = System.currentTimeMillis();
+            subscriber.writingSince.set(start);
+            try {
+                subscriber.stream.write(event);
+                subscriber.stream.flush();
+            } catch (IOException error) {
+                // The client went away.
+                subscriber.dropped = true;
+            }
+            if (!subscriber.writingSince.compareAndSet(start, 0)) {
+                // The broadcaster has given up on us and replaced this writer meanwhile.
+                this.resizeWriters(-1);
+                break;
+            }
+        }
+        if (subscriber.dropped) {
+            try {
+                subscriber.stream.close();
+            } catch (IOException ignored) {
+            }
+            return;
+        }
+        subscriber.scheduled.set(false);
+        // An event handed over after the last check has not scheduled a writer.
+        this.schedule(subscriber);
+    }
+
+    /**
+     * Changes the number of writers by the given number.
+     */
+    private void resizeWriters(final int delta) {
+        this.writersLock.lock();
+        try {
+            final var size = this.writers.getMaximumPoolSize() + delta;
+            // The maximal size must never be below the core size.
+            if (delta > 0) {
+                this.writers.setMaximumPoolSize(size);
+                this.writers.setCorePoolSize(size);
+            } else {
+                this.writers.setCorePoolSize(size);
+                this.writers.setMaximumPoolSize(size);
+            }
+        } finally {
+            this.writersLock.unlock();
+        }
+    }
+
+    /**
+     * Encodes an estimate as server-sent event.
+     */
+    private static byte[] encode(final int numAvailable) {
+        return ("data: " + numAvailable + "\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void run() {
+        final var keepalive = ":\n\n".getBytes(StandardCharsets.UTF_8);
+        var lastKeepalive = System.currentTimeMillis();
+        while (true) {
+            try {
+                Thread.sleep(this.interval);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                return;
+            }
+            // Send changed estimates to the existing subscribers.
+            for (final var entry : this.subscribers.entrySet()) {
+                final var numAvailable = this.latest.get(entry.getKey());
+                if (numAvailable != null && !numAvailable.equals(this.sent.get(entry.getKey()))) {
+                    final var event = encode(numAvailable);
+                    entry.getValue().removeIf(subscriber -> !this.send(subscriber, event, false));
+                    this.sent.put(entry.getKey(), numAvailable);
+                }
+            }
+            // New subscribers get the estimate the other subscribers of the event have right
+            // away, the first subscriber of an event gets the latest estimate.
+            Subscriber subscriber;
+            while ((subscriber = this.joining.poll()) != null) {
+                var numAvailable = this.sent.get(subscriber.eventId);
+                if (numAvailable == null) {
+                    numAvailable = this.latest.get(subscriber.eventId);
+                    if (numAvailable != null) {
+                        this.sent.put(subscriber.eventId, numAvailable);
+                    }
+                }
+                if (numAvailable == null || this.send(subscriber, encode(numAvailable), false)) {
+                    this.subscribers.computeIfAbsent(subscriber.eventId, id -> new ArrayList<>()).add(subscriber);
+                }
+            }
+            final var now = System.currentTimeMillis();
+            if (now - lastKeepalive >= KEEPALIVE_INTERVAL) {
+                this.subscribers.values().forEach(list -> list.removeIf(idle -> !this.send(idle, keepalive, true)));
+                lastKeepalive = now;
+            }
+        }
+    }
+}
@@ -1,12 +1,26 @@
 package com.pseuco.np22.rocket;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.locks.ReentrantLock;
 
 import com.pseuco.np22.Config;
+import com.pseuco.np22.request.CustomerId;
 import com.pseuco.np22.request.ServerId;
 import com.pseuco.np22.rocket.Server.MsgShutdown;
 
@@ -25,6 +39,39 @@ public class Coordinator {
      * The database of the system.
      */
     protected final Database database;
+    /**
+     * Recovers the ticket states and takes snapshots of them.
+     */
+    protected final Snapshotter snapshotter;
+    /**
+     * The journal of ticket sales.
+     */
+    protected final Journal journal;
+    /**
+     * Estimates the available tickets of the whole cluster.
+     */
+    protected final Gossip gossip;
+    /**
+     * The events sold by the system by id, starting with the default event.
+     */
+    protected final Map<String, Event> events;
+    /**
+     * The load metrics of the system.
+     */
+    protected final Metrics metrics = new Metrics();
+    /**
+     * Pushes the available tickets to subscribed clients.
+     */
+    protected final Broadcaster broadcaster;
+    /**
+     * Admits customers to the reservations.
+     */
+    protected final WaitingRoom waitingRoom;
+    /**
+     * The work-stealing pool the servers are scheduled on, {@code null} if every server runs
+     * in its own thread.
+     */
+    protected final ForkJoinPool scheduler;
     /**
      * The load balancer of the system.
      */
@@ -35,18 +82,14 @@ public class Coordinator {
     protected final Estimator estimator;
 
     /**
-     * a Map that contains all active servers we have.
+     * The autoscaler of the system.
      */
-    private HashMap<ServerId, Server> activeServers = new HashMap<ServerId, Server>();
-    /**
-     * a Map that contains all In-termination servers.
-     */
-    private HashMap<ServerId, Server> inTerminationServers = new HashMap<ServerId, Server>();
+    protected final Autoscaler autoscaler;
 
     /**
-     * a Map that contains all servers we have.
+     * a Map that contains all active servers we have.
      */
-    private HashMap<ServerId, Server> allServers = new HashMap<ServerId, Server>();
+    private HashMap<ServerId, Server> activeServers = new HashMap<ServerId, Server>();
     /**
      * a List that contains the ID of all active servers we have.
      */
@@ -56,11 +99,65 @@ public class Coordinator {
      */
     private List<ServerId> inTerminationServersIDs = new ArrayList<ServerId>();
 
-    private List<ServerId> terminatedServerIDs = new ArrayList<ServerId>();
     /**
-     * a List that contains the ID of all servers we have.
+     * a Map from drained servers to the servers which took over their reservations.
+     */
+    private HashMap<ServerId, ServerId> forwards = new HashMap<ServerId, ServerId>();
+
+    /**
+     * A forward with the time it has been registered.
+     */
+    private static class Forward {
+        private final ServerId from;
+        private final long registeredAt;
+
+        private Forward(final ServerId from, final long registeredAt) {
+            this.from = from;
+            this.registeredAt = registeredAt;
+        }
+    }
+
+    /**
+     * The forwards in the order they have been registered, such that they are dropped once
+     * every reservation handed over with them has expired.
+     */
+    private ArrayDeque<Forward> forwardOrder = new ArrayDeque<>();
+
+    /**
+     * The servers which took over the reservations recovered after a restart by customer.
+     * The customers still send the ids of the servers of the previous process, which never
+     * match again, so the balancer finds their reservations by this map instead.
+     */
+    private final ConcurrentHashMap<CustomerId, ServerId> recoveredOwners = new ConcurrentHashMap<>();
+
+    /**
+     * The system time after which no recovered reservation can be alive anymore.
+     */
+    private final long recoveredUntil;
+
+    /**
+     * The servers which have not terminated yet by slot, {@code null} for free slots. The id
+     * of a server names its slot and the generation of the slot, so the balancer finds a
+     * server by reading the slot and comparing the id, and ids of terminated servers do not
+     * match anymore. Replaced by a larger copy when all slots are taken.
+     */
+    private volatile AtomicReferenceArray<Server> slots = new AtomicReferenceArray<>(16);
+    /**
+     * The generation of every slot, incremented whenever the slot is taken.
+     */
+    private int[] generations = new int[16];
+    /**
+     * The slots which have been released by terminated servers.
      */
-    private List<ServerId> allServersIDs = new ArrayList<ServerId>();
+    private final ArrayDeque<Integer> freeSlots = new ArrayDeque<>();
+    /**
+     * The number of slots which have been taken at least once.
+     */
+    private int numSlotsUsed = 0;
+    /**
+     * Distinguishes the server ids of this process from those of earlier processes.
+     */
+    private final long serverIdSalt = ThreadLocalRandom.current().nextLong();
 
     private ReentrantLock coordinatorLock = new ReentrantLock();
 
@@ -71,24 +168,99 @@ public class Coordinator {
      */
     public Coordinator(final Config config) {
         this.config = config;
-        this.database = new Database(this);
+        // Additional events are kept on the heap of this node only, so they must not silently
+        // lack the durability or the sharing configured for the default event.
+        if (!config.getEvents().isEmpty()
+                && (config.getJournalPath() != null || config.getTicketStorePath() != null || config.isCluster())) {
+            throw new IllegalArgumentException(
+                    "Additional events cannot be combined with a journal, ticket store or cluster!");
+        }
+        // Recover the ticket states before any new record is appended to the journal.
+        this.snapshotter = new Snapshotter(config);
+        try {
+            this.gossip = new Gossip(this);
+            if (config.getAuthorityAddress() != null) {
+                this.database = new RemoteDatabase(this);
+            } else {
+                if (config.getTicketStorePath() != null) {
+                    this.database = new MappedDatabase(this);
+                } else {
+                    this.database = new Database(this);
+                }
+                // The tickets of the local database are available on this node.
+                this.gossip.countAvailable(this.database.getNumAvailable());
+            }
+            this.journal = new Journal(config.getJournalPath(), this.snapshotter.getImage().getJournalGeneration(),
+                    config.getJournalSyncPolicy(), config.getJournalSyncInterval());
+            // The default event is backed by the configured database, the other events are
+            // only allowed without a journal or cluster.
+            final Map<String, Event> events = new LinkedHashMap<>();
+            events.put(Event.DEFAULT_ID, new Event(Event.DEFAULT_ID, this.database, this.journal, this.gossip,
+                    config.getTimeout() * 1000L));
+            for (final var options : config.getEvents()) {
+                if (events.containsKey(options.getId())) {
+                    throw new IllegalArgumentException("Duplicate event id " + options.getId() + "!");
+                }
+                final var eventGossip = new Gossip((InetSocketAddress) null);
+                eventGossip.countAvailable(options.getNumTickets());
+                events.put(options.getId(), new Event(options.getId(), new Database(options.getNumTickets()),
+                        new Journal(null, 0, config.getJournalSyncPolicy(), config.getJournalSyncInterval()),
+                        eventGossip, options.getTimeout() * 1000L));
+            }
+            this.events = Collections.unmodifiableMap(events);
+            this.recoveredUntil = System.currentTimeMillis() + this.getMaxReservationLifetime();
+        } catch (IOException error) {
+            throw new UncheckedIOException("Unable to open the database, journal or gossip port!", error);
+        }
+        this.broadcaster = new Broadcaster(this);
+        this.waitingRoom = new WaitingRoom(this);
+        // Servers are queued in FIFO order, such that every server gets its turn.
+        this.scheduler = config.getSchedulerThreads() > 0
+                ? new ForkJoinPool(config.getSchedulerThreads(), ForkJoinPool.defaultForkJoinWorkerThreadFactory,
+                        null, true)
+                : null;
         this.balancer = new Balancer(this);
         this.estimator = new Estimator(this);
+        this.autoscaler = new Autoscaler(this);
     }
 
     /**
+     * <p>
+     * Returns the servers which have not terminated yet, i.e., the active servers and those
+     * in the process of termination.
+     * </p>
+     * 
+     * <p>
+     * Terminated servers are forgotten, so the list is proportional to the servers alive.
+     * </p>
      * 
-     * @return Map with all servers
+     * @return The servers which have not terminated yet.
      */
-    public HashMap<ServerId, Server> getAllServers() {
+    public List<Server> getLiveServers() {
         this.coordinatorLock.lock();
         try {
-            return this.allServers;
+            final List<Server> liveServers = new ArrayList<>();
+            for (int slot = 0; slot < this.numSlotsUsed; slot++) {
+                final var server = this.slots.get(slot);
+                if (server != null) {
+                    liveServers.add(server);
+                }
+            }
+            return liveServers;
         } finally {
             this.coordinatorLock.unlock();
         }
     }
 
+    /**
+     * Returns the gossip estimating the available tickets of the whole cluster.
+     * 
+     * @return The gossip of the node.
+     */
+    public Gossip getGossip() {
+        return this.gossip;
+    }
+
     /**
      * Returns the configuration of the system.
      * 
@@ -117,6 +289,88 @@ public class Coordinator {
         }
     }
 
+    /**
+     * Returns the event with the given id.
+     * 
+     * @param eventId The id of the event.
+     * @return The event or {@code null} if there is no such event.
+     */
+    public Event getEvent(String eventId) {
+        return this.events.get(eventId);
+    }
+
+    /**
+     * Returns all events sold by the system, starting with the default event.
+     * 
+     * @return The events of the system.
+     */
+    public Collection<Event> getEvents() {
+        return this.events.values();
+    }
+
+    /**
+     * Returns the snapshotter of the system.
+     * 
+     * @return The snapshotter of the system.
+     */
+    public Snapshotter getSnapshotter() {
+        return this.snapshotter;
+    }
+
+    /**
+     * Returns the journal of ticket sales.
+     * 
+     * @return The journal of ticket sales.
+     */
+    public Journal getJournal() {
+        return this.journal;
+    }
+
+    /**
+     * Returns the load metrics of the system.
+     * 
+     * @return The load metrics of the system.
+     */
+    public Metrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Returns the load balancer of the system.
+     * 
+     * @return The load balancer of the system.
+     */
+    public Balancer getBalancer() {
+        return this.balancer;
+    }
+
+    /**
+     * Returns the broadcaster of the availability stream.
+     * 
+     * @return The broadcaster of the availability stream.
+     */
+    public Broadcaster getBroadcaster() {
+        return this.broadcaster;
+    }
+
+    /**
+     * Returns the waiting room in front of the reservations.
+     * 
+     * @return The waiting room in front of the reservations.
+     */
+    public WaitingRoom getWaitingRoom() {
+        return this.waitingRoom;
+    }
+
+    /**
+     * Returns the pool the servers are scheduled on.
+     * 
+     * @return The scheduler or {@code null} if every server runs in its own thread.
+     */
+    public ForkJoinPool getScheduler() {
+        return this.scheduler;
+    }
+
     /**
      * Returns the mailbox of the estimator of the system.
      * 
@@ -135,12 +389,65 @@ public class Coordinator {
      * Returns the mailbox of a specific server of the system.
      * 
      * @param serverId The id of the server.
-     * @return The mailbox of the server with the given id.
+     * @return The mailbox of the server with the given id or {@code null} if the server has
+     *         terminated.
      */
     public Mailbox<Command<Server>> getServerMailbox(ServerId serverId) {
+        final var server = this.lookupServer(serverId);
+        return server == null ? null : server.getMailbox();
+    }
+
+    /**
+     * Finds a server which has not terminated yet by its id without taking a lock.
+     * 
+     * @param serverId The id of the server.
+     * @return The server or {@code null} if the server has terminated or the id is unknown.
+     */
+    public Server lookupServer(ServerId serverId) {
+        final var slots = this.slots;
+        final var slot = serverId.getSlot();
+        if (slot < 0 || slot >= slots.length()) {
+            return null;
+        }
+        final var server = slots.get(slot);
+        return server != null && server.id.equals(serverId) ? server : null;
+    }
+
+    /**
+     * Takes a free slot for a new server and returns the id naming it, the caller must hold
+     * the lock.
+     */
+    private ServerId takeSlot() {
+        int slot;
+        if (!this.freeSlots.isEmpty()) {
+            slot = this.freeSlots.poll();
+        } else {
+            slot = this.numSlotsUsed++;
+            if (slot >= this.generations.length) {
+                final var grown = new AtomicReferenceArray<Server>(2 * this.generations.length);
+                for (int i = 0; i < this.generations.length; i++) {
+                    grown.set(i, this.slots.get(i));
+                }
+                this.slots = grown;
+                this.generations = Arrays.copyOf(this.generations, grown.length());
+            }
+        }
+        this.generations[slot]++;
+        return ServerId.fromSlot(slot, this.generations[slot], this.serverIdSalt);
+    }
+
+    /**
+     * Releases the slot of a terminated server, such that its id does not match anymore.
+     * 
+     * @param serverId The id of the terminated server.
+     */
+    public void releaseSlot(ServerId serverId) {
         this.coordinatorLock.lock();
         try {
-            return allServers.get(serverId).getMailbox();
+            if (this.lookupServer(serverId) != null) {
+                this.slots.set(serverId.getSlot(), null);
+                this.freeSlots.add(serverId.getSlot());
+            }
         } finally {
             this.coordinatorLock.unlock();
         }
@@ -186,7 +493,6 @@ public class Coordinator {
 
         Server removedServer = activeServers.remove(serverId); // remove the server from the activeServers Map
         activeServersIDs.remove(serverId); // remove the id from the activeServerIds List
-        inTerminationServers.put(serverId, removedServer); // add the removed Server to the terminatedServer Map
         inTerminationServersIDs.add(serverId); // add the removed Server to the terminatedServer List
         // send msgShutdown to the server
         Command<Server> mShutdown = new MsgShutdown();
@@ -207,15 +513,22 @@ public class Coordinator {
      */
     public ServerId createServer() {
 
-        ServerId id = ServerId.generate(); // create new serverID
+        ServerId id = this.takeSlot(); // create new serverID naming a free slot
         Server newServer = new Server(id, this); // create new Server with the generated id
+        // the server must be started up before it can be reached through its slot
+        final var recovered = newServer.startUp();
+        this.slots.set(id.getSlot(), newServer);
         // add the new server to the HashMap/List of active server/ServerID
         activeServers.put(id, newServer);
-        allServers.put(id, newServer);
         activeServersIDs.add(id);
-        allServersIDs.add(id);
-        // start the server as a thread
-        new Thread(newServer).start();
+        // route the customers of recovered reservations to the server which holds them
+        recovered.forEach(customer -> this.addRecoveredOwner(customer, id));
+        // start the server on the scheduler or as a thread
+        if (this.scheduler != null) {
+            newServer.schedule();
+        } else {
+            new Thread(newServer).start();
+        }
         return id; // return the id of the created server
 
     }
@@ -279,6 +592,24 @@ public class Coordinator {
         }
     }
 
+    /**
+     * Returns the number of requests queued at the active servers.
+     * 
+     * @return The number of requests queued at the active servers.
+     */
+    public int getQueueLength() {
+        this.coordinatorLock.lock();
+        try {
+            int queueLength = 0;
+            for (Server server : activeServers.values()) {
+                queueLength += server.getMailbox().size();
+            }
+            return queueLength;
+        } finally {
+            this.coordinatorLock.unlock();
+        }
+    }
+
     /**
      * Returns a list of {@link ServerId} of the active servers.
      * 
@@ -339,36 +670,110 @@ public class Coordinator {
      * just those which are still active).
      * </p>
      * 
-     * @return A list of {@link ServerId} of the all servers.
+     * @return A list of {@link ServerId} of the servers which have not terminated yet.
      */
     public List<ServerId> getAllServerIds() {
-        this.coordinatorLock.lock();
-        try {
-            List<ServerId> listOfAllServerIds = new ArrayList<>();
-            listOfAllServerIds.addAll(allServersIDs);
-            return listOfAllServerIds;
-        } finally {
-            this.coordinatorLock.unlock();
+        List<ServerId> listOfAllServerIds = new ArrayList<>();
+        for (Server server : this.getLiveServers()) {
+            listOfAllServerIds.add(server.id);
         }
+        return listOfAllServerIds;
     }
 
-    public List<ServerId> getTerminatedServerIds() {
+    /**
+     * Returns the longest time a reservation may live, including its extensions.
+     */
+    private long getMaxReservationLifetime() {
+        long timeout = 0;
+        for (final var event : this.events.values()) {
+            timeout = Math.max(timeout, event.getTimeout());
+        }
+        return timeout * (this.config.getMaxExtensions() + 1);
+    }
+
+    /**
+     * Records that a drained server has handed over its reservations to another server,
+     * such that later requests for the drained server reach the other server.
+     * 
+     * @param from The id of the drained server.
+     * @param to   The id of the server which took over the reservations.
+     */
+    public void addForward(ServerId from, ServerId to) {
         this.coordinatorLock.lock();
         try {
-            List<ServerId> listOfTerminatedServerIds = new ArrayList<>();
-            listOfTerminatedServerIds.addAll(terminatedServerIDs);
-            return listOfTerminatedServerIds;
+            // Once the reservations handed over with a forward have expired, late requests
+            // may go to any server, so the forward is dropped.
+            final var now = System.currentTimeMillis();
+            final var lifetime = this.getMaxReservationLifetime();
+            while (!forwardOrder.isEmpty() && now - forwardOrder.peek().registeredAt > lifetime) {
+                forwards.remove(forwardOrder.poll().from);
+            }
+            forwards.put(from, to);
+            forwardOrder.add(new Forward(from, now));
         } finally {
             this.coordinatorLock.unlock();
         }
     }
 
-    public void addToTerminatedServerIds(ServerId id) {
+    /**
+     * Follows the forwards of drained servers.
+     * 
+     * @param id The id of a server.
+     * @return The id of the server which holds the reservations of the given server now, or
+     *         the given id if the server has not been drained.
+     */
+    public ServerId resolveForward(ServerId id) {
         this.coordinatorLock.lock();
         try {
-            terminatedServerIDs.add(id);
+            // every server is drained at most once, so the forwards cannot form a cycle
+            ServerId target = id;
+            while (forwards.containsKey(target)) {
+                target = forwards.get(target);
+            }
+            return target;
         } finally {
             this.coordinatorLock.unlock();
         }
     }
+
+    /**
+     * Registers the server which took over a reservation recovered after a restart.
+     * 
+     * @param customer The customer holding the reservation.
+     * @param serverId The id of the server holding the reservation.
+     */
+    private void addRecoveredOwner(CustomerId customer, ServerId serverId) {
+        this.recoveredOwners.put(customer, serverId);
+    }
+
+    /**
+     * Finds the server holding a reservation of a customer recovered after a restart, e.g.,
+     * for a request with the id of a server of the previous process.
+     * 
+     * @param customer The customer.
+     * @return The id of the server holding the recovered reservation or {@code null} if the
+     *         customer holds no recovered reservation.
+     */
+    public ServerId findRecoveredOwner(CustomerId customer) {
+        if (this.recoveredOwners.isEmpty()) {
+            return null;
+        }
+        if (System.currentTimeMillis() > this.recoveredUntil) {
+            // every recovered reservation has expired by now
+            this.recoveredOwners.clear();
+            return null;
+        }
+        final var owner = this.recoveredOwners.get(customer);
+        if (owner == null) {
+            return null;
+        }
+        final var target = this.resolveForward(owner);
+        if (this.lookupServer(target) == null) {
+            // the server kept the reservation until it has been bought, aborted or expired
+            this.recoveredOwners.remove(customer, owner);
+            return null;
+        }
+        return target;
+    }
+
 }
@@ -1,23 +1,76 @@
 package com.pseuco.np22.rocket;
 
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 //import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+import com.pseuco.np22.request.CustomerId;
+
 /**
  * Implementation of the central database for tickets.
  */
 public class Database {
     /**
-     * The tickets that are currently in the database.
+     * The tickets that are currently in the database by id, {@code null} if allocated.
+     */
+    private Ticket[] unallocated = new Ticket[0];
+
+    /**
+     * The index of the ids of the tickets in the database.
      */
-    private final List<Ticket> unallocated = new ArrayList<>();
+    private FreeExtents extents = new FreeExtents(0);
 
     private Lock ticketLock; // lock for safe access/leave to the tickets
-    private int numAvailable = 0; // the number of tickets available
+
+    /**
+     * Reservations recovered from the journal which have not been taken over by a server yet.
+     */
+    protected Map<CustomerId, Reservation> recovered = new HashMap<>();
+
+    /**
+     * Group reservations recovered from the journal which have not been taken over by a
+     * server yet.
+     */
+    protected Map<CustomerId, GroupReservation> recoveredGroups = new HashMap<>();
+
+    /**
+     * The tickets held according to the journal by customer, collected during recovery.
+     */
+    private Map<CustomerId, List<Ticket>> recoveredHolds = new HashMap<>();
+
+    /**
+     * The earliest time a hold of a customer expires at, collected during recovery.
+     */
+    private Map<CustomerId, Long> recoveredUntil = new HashMap<>();
+
+    /**
+     * Constructs an empty {@link Database} for backends which keep their tickets elsewhere.
+     */
+    protected Database() {
+        this.ticketLock = new ReentrantLock();
+    }
+
+    /**
+     * Constructs a new {@link Database} with the given number of fresh tickets, e.g., for an
+     * additional event.
+     * 
+     * @param numTickets The number of tickets.
+     */
+    public Database(final int numTickets) {
+        this.unallocated = new Ticket[numTickets];
+        this.extents = new FreeExtents(numTickets);
+        for (var id = 0; id < numTickets; id++) {
+            this.unallocated[id] = new Ticket(id);
+        }
+        this.extents.markFree(0, numTickets);
+        this.ticketLock = new ReentrantLock();
+    }
 
     /**
      * Constructs a new {@link Database}.
@@ -25,12 +78,64 @@ public class Database {
      * @param coordinator The {@link Coordinator} of the ticket sales system.
      */
     public Database(final Coordinator coordinator) {
-        // Generate the necessary number of tickets.
+        // Generate the necessary number of tickets, skipping those which have been sold or
+        // are still reserved according to the recovered image.
+        final var image = coordinator.getSnapshotter().getImage();
+        final var now = System.currentTimeMillis();
+        this.unallocated = new Ticket[coordinator.getConfig().getNumTickets()];
+        this.extents = new FreeExtents(this.unallocated.length);
         for (var id = 0; id < coordinator.getConfig().getNumTickets(); id++) {
-            this.unallocated.add(new Ticket(id));
+            if (image.isSold(id)) {
+                continue;
+            }
+            final var hold = image.getHold(id);
+            if (hold != null && now <= hold.getExpiresAt()) {
+                this.recoverHold(hold, new Ticket(id));
+            } else {
+                this.unallocated[id] = new Ticket(id);
+            }
         }
+        this.markFreeSlots();
+        this.finishRecovery();
         this.ticketLock = new ReentrantLock();
-        this.numAvailable = coordinator.getConfig().getNumTickets();
+    }
+
+    /**
+     * Records a ticket held according to the journal, {@link #finishRecovery} turns the
+     * recorded tickets into reservations.
+     * 
+     * @param hold   The hold of the ticket.
+     * @param ticket The held ticket.
+     */
+    protected void recoverHold(final Snapshot.Hold hold, final Ticket ticket) {
+        this.recoveredHolds.computeIfAbsent(hold.getCustomer(), customer -> new ArrayList<>()).add(ticket);
+        this.recoveredUntil.merge(hold.getCustomer(), hold.getExpiresAt(), Math::min);
+    }
+
+    /**
+     * <p>
+     * Turns the recorded holds into the reservations taken over by the first server.
+     * </p>
+     * 
+     * <p>
+     * The journal does not tell single reservations and groups apart. A customer holding a
+     * single ticket gets a reservation back and a customer holding several tickets gets a
+     * group reservation back, so a customer holding a ticket and a group at the time of the
+     * crash gets a single group back, which expires with the earliest of its holds.
+     * </p>
+     */
+    protected void finishRecovery() {
+        this.recoveredHolds.forEach((customer, tickets) -> {
+            final long expiresAt = this.recoveredUntil.get(customer);
+            if (tickets.size() == 1) {
+                this.recovered.put(customer, Reservation.until(tickets.get(0), expiresAt));
+            } else {
+                tickets.sort(Comparator.comparingInt(Ticket::getId));
+                this.recoveredGroups.put(customer, GroupReservation.until(tickets, expiresAt));
+            }
+        });
+        this.recoveredHolds = new HashMap<>();
+        this.recoveredUntil = new HashMap<>();
     }
 
     /**
@@ -41,7 +146,7 @@ public class Database {
     public int getNumAvailable() {
         ticketLock.lock();
         try {
-            return numAvailable;
+            return this.extents.getNumFree();
         } finally {
             ticketLock.unlock();
         }
@@ -62,35 +167,138 @@ public class Database {
     public List<Ticket> allocate(final int numTickets) {
         ticketLock.lock();
         try {
-            List<Ticket> AllocatedTickets = new ArrayList<>();
-            Ticket ticket;
-
-            // if there is no tickets in Data Base
-            if (this.getNumAvailable() == 0) {
-                return AllocatedTickets;
-                // if there are tickets in Data Base as I asked
-            } else if (numTickets <= this.getNumAvailable()) {
-                for (int i = 0; i < numTickets; i++) {
-                    ticket = unallocated.remove(0);
-                    numAvailable--;
-                    AllocatedTickets.add(ticket);
-                }
-                return AllocatedTickets;
-                // if there are tickets but not as I asked
+            final var count = Math.min(numTickets, this.extents.getNumFree());
+            final List<Ticket> allocatedTickets = new ArrayList<>(Math.max(count, 0));
+            // Lease a contiguous range if possible, such that servers can serve groups with
+            // adjacent tickets, otherwise take the leftmost tickets.
+            final var start = this.extents.findRun(count);
+            if (start >= 0) {
+                this.take(start, start + count, allocatedTickets);
             } else {
-                for (int i = 0; i < this.getNumAvailable(); i++) {
-                    ticket = unallocated.remove(0);
-                    numAvailable--;
-                    AllocatedTickets.add(ticket);
+                while (allocatedTickets.size() < count) {
+                    final var id = this.extents.findRun(1);
+                    this.take(id, id + 1, allocatedTickets);
                 }
+            }
+            return allocatedTickets;
+        } finally {
+            ticketLock.unlock();
+        }
+    }
 
-                return AllocatedTickets;
+    /**
+     * <p>
+     * Tries to allocate a block of tickets with consecutive ids, e.g., adjacent seats for a
+     * group.
+     * </p>
+     * 
+     * <p>
+     * Backends without an index of the free ids do not support blocks and return an empty
+     * list.
+     * </p>
+     * 
+     * @param numTickets The number of tickets to allocate.
+     * @return The tickets of the block or an empty list if there is no such block.
+     */
+    public List<Ticket> allocateBlock(final int numTickets) {
+        ticketLock.lock();
+        try {
+            final List<Ticket> allocatedTickets = new ArrayList<>();
+            final var start = this.extents.findRun(numTickets);
+            if (start >= 0) {
+                this.take(start, start + numTickets, allocatedTickets);
             }
+            return allocatedTickets;
+        } finally {
+            ticketLock.unlock();
+        }
+    }
+
+    /**
+     * Takes the tickets with ids in the given range out of the database, the caller must hold
+     * the ticket lock.
+     */
+    private void take(final int from, final int to, final List<Ticket> allocatedTickets) {
+        this.extents.markTaken(from, to);
+        for (var id = from; id < to; id++) {
+            allocatedTickets.add(this.unallocated[id]);
+            this.unallocated[id] = null;
+        }
+    }
+
+    /**
+     * <p>
+     * Takes the reservations recovered from the journal.
+     * </p>
+     * 
+     * <p>
+     * The first server to start takes over all recovered reservations such that their
+     * customers can still buy or abort them.
+     * </p>
+     * 
+     * @return The recovered reservations by customer, empty for all but the first call.
+     */
+    public Map<CustomerId, Reservation> takeRecovered() {
+        ticketLock.lock();
+        try {
+            final var taken = this.recovered;
+            this.recovered = new HashMap<>();
+            return taken;
+        } finally {
+            ticketLock.unlock();
+        }
+    }
+
+    /**
+     * Takes the group reservations recovered from the journal, like {@link #takeRecovered}.
+     * 
+     * @return The recovered group reservations by customer, empty for all but the first call.
+     */
+    public Map<CustomerId, GroupReservation> takeRecoveredGroups() {
+        ticketLock.lock();
+        try {
+            final var taken = this.recoveredGroups;
+            this.recoveredGroups = new HashMap<>();
+            return taken;
         } finally {
             ticketLock.unlock();
         }
     }
 
+    /**
+     * <p>
+     * Confirms the sale of a reserved ticket.
+     * </p>
+     * 
+     * <p>
+     * Tickets allocated from this database can always be sold. Backends which lease their
+     * tickets from elsewhere may reject the sale if the ticket is no longer ours.
+     * </p>
+     * 
+     * @param ticketId The id of the ticket to sell.
+     * @return Whether the ticket may be sold.
+     */
+    public boolean confirmSale(final int ticketId) {
+        return true;
+    }
+
+    /**
+     * <p>
+     * Confirms the sale of the reserved tickets of a group at once.
+     * </p>
+     * 
+     * <p>
+     * Either all tickets may be sold or none of them, such that a group is never sold
+     * partially.
+     * </p>
+     * 
+     * @param ticketIds The ids of the tickets to sell.
+     * @return Whether all tickets may be sold.
+     */
+    public boolean confirmSales(final List<Integer> ticketIds) {
+        return true;
+    }
+
     /**
      * Deallocates previously allocated tickets.
      * 
@@ -99,10 +307,14 @@ public class Database {
     public void deallocate(final Iterable<Ticket> tickets) {
         ticketLock.lock();
         try {
-            // add all tickets in unallocated List
+            // put the tickets back into their slots
             tickets.forEach((ticket) -> {
-                unallocated.add(ticket);
-                numAvailable++;
+                final var id = ticket.getId();
+                if (id >= this.unallocated.length) {
+                    this.grow(id + 1);
+                }
+                this.unallocated[id] = ticket;
+                this.extents.markFree(id, id + 1);
             });
 
         } finally {
@@ -110,4 +322,35 @@ public class Database {
         }
 
     }
-}
\ No newline at end of file
+
+    /**
+     * Grows the slots and the index for databases filled by deallocation, the caller must
+     * hold the ticket lock.
+     */
+    private void grow(final int capacity) {
+        final var slots = new Ticket[Math.max(capacity, 2 * this.unallocated.length)];
+        System.arraycopy(this.unallocated, 0, slots, 0, this.unallocated.length);
+        this.unallocated = slots;
+        this.extents = new FreeExtents(slots.length);
+        this.markFreeSlots();
+    }
+
+    /**
+     * Marks the filled slots as free in a fresh index, one update per run of adjacent
+     * slots rather than one per ticket.
+     */
+    private void markFreeSlots() {
+        var id = 0;
+        while (id < this.unallocated.length) {
+            if (this.unallocated[id] == null) {
+                id++;
+                continue;
+            }
+            final var from = id;
+            while (id < this.unallocated.length && this.unallocated[id] != null) {
+                id++;
+            }
+            this.extents.markFree(from, id);
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.pseuco.np22.rocket;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.pseuco.np22.request.ServerId;
 import com.pseuco.np22.rocket.Server.MsgTicketsAvailable;
@@ -24,9 +25,9 @@ public class Estimator implements Runnable {
     private final Mailbox<Command<Estimator>> mailbox = new Mailbox<>();
 
     /**
-     * map which contains the serverID and the estimation we got from that server.
+     * map which contains the serverID and the estimation we got from that server by event id.
      */
-    private HashMap<ServerId, Integer> serverEstimations = new HashMap<>();
+    private HashMap<ServerId, Map<String, Integer>> serverEstimations = new HashMap<>();
 
     /**
      * Constructs a new {@link Estimator}.
@@ -60,16 +61,18 @@ public class Estimator implements Runnable {
             // reset the old estimation.
             this.serverEstimations.clear();
 
-            // check for non terminated servers
-            for (ServerId serverId : this.coordinator.getAllServerIds()) {
-                Server serverToCheck = this.coordinator.getAllServers().get(serverId);
-                if (!serverToCheck.isTerminated()) {
-                    nonTerminatedServers.put(serverId, serverToCheck);
-                    nonTerminatedServersIds.add(serverId);
-                }
+            // the coordinator forgets terminated servers, so only live servers are visited
+            for (Server server : this.coordinator.getLiveServers()) {
+                nonTerminatedServers.put(server.id, server);
+                nonTerminatedServersIds.add(server.id);
+            }
+            // In cluster mode the gossip knows about the tickets of all nodes, otherwise we
+            // ask the database for the tickets not allocated to any server.
+            final Map<String, Integer> numberofTicketsInDB = new HashMap<>();
+            for (final var event : this.coordinator.getEvents()) {
+                numberofTicketsInDB.put(event.getId(),
+                        event.getGossip().isEnabled() ? 0 : event.getDatabase().getNumAvailable());
             }
-            // now get the num of tickets in DB
-            int numberofTicketsInDB = this.coordinator.getDatabase().getNumAvailable();
             // read the msgs to estimate from each server that is still not terminated....in first
             // round it is empty.
             while (!this.getMailbox().isEmpty()) {
@@ -77,26 +80,51 @@ public class Estimator implements Runnable {
                 assert (msg != null);
                 msg.execute(this);
             }
+            // publish the estimation of every event to the subscribers of the availability stream
+            // and the load balancer, which answers polls with it, once the servers have reported
+            // the tickets allocated to them
+            if (!serverEstimations.isEmpty() || nonTerminatedServersIds.isEmpty()) {
+                for (final var event : this.coordinator.getEvents()) {
+                    int numberOfTickets = numberofTicketsInDB.get(event.getId());
+                    for (Map<String, Integer> estimations : serverEstimations.values()) {
+                        numberOfTickets += estimations.getOrDefault(event.getId(), 0);
+                    }
+                    if (event.getGossip().isEnabled()) {
+                        numberOfTickets = event.getGossip().getNumAvailable();
+                    }
+                    this.coordinator.getBroadcaster().publish(event.getId(), numberOfTickets);
+                    this.coordinator.getBalancer().cacheAvailability(event.getId(), numberOfTickets);
+                }
+            }
             // send all servers the estimation number (except the number of ticket the server we send
             // to has itself)
 
             for (ServerId serverId : nonTerminatedServersIds) {
-                int numberOfTicketInServers = 0;
-                if (!serverEstimations.isEmpty()) {
+                // every event is estimated on its own
+                final Map<String, Integer> endEstimations = new HashMap<>();
+                for (final var event : this.coordinator.getEvents()) {
+                    int numberOfTicketInServers = 0;
                     for (ServerId id : serverEstimations.keySet()) {
                         if (!id.equals(serverId)) {
-                            numberOfTicketInServers = numberOfTicketInServers + serverEstimations.get(id);
+                            numberOfTicketInServers += serverEstimations.get(id).getOrDefault(event.getId(), 0);
                         }
                     }
+                    // create the msg to send
+                    int endEstimation = numberOfTicketInServers + numberofTicketsInDB.get(event.getId());
+                    if (event.getGossip().isEnabled()) {
+                        // The global estimate includes the tickets of the server itself.
+                        final var own = serverEstimations.getOrDefault(serverId, Map.of());
+                        endEstimation = Math.max(0,
+                                event.getGossip().getNumAvailable() - own.getOrDefault(event.getId(), 0));
+                    }
+                    endEstimations.put(event.getId(), endEstimation);
                 }
-                // create the msg to send
-                int endEstimation = numberOfTicketInServers + numberofTicketsInDB;
-                Command<Server> msgTicketsAvailable = new MsgTicketsAvailable(endEstimation);
+                Command<Server> msgTicketsAvailable = new MsgTicketsAvailable(endEstimations);
                 nonTerminatedServers.get(serverId).getMailbox().sendHighPriority(msgTicketsAvailable);
             }
 
             // wait 10/ nonTerminatedServers.Size */
-            double secondsToSleep = 10 / nonTerminatedServers.size();
+            double secondsToSleep = 10.0 / nonTerminatedServers.size();
             double millisecondsToSleep = secondsToSleep * 1000;
             try {
                 Thread.sleep((long) millisecondsToSleep);
@@ -112,15 +140,15 @@ public class Estimator implements Runnable {
      */
     public static class MsgAvailableServer implements Command<Estimator> {
         private final ServerId serverId;
-        private final int numAvailable;
+        private final Map<String, Integer> numAvailable;
 
         /**
          * Constructs a new {@link MsgAvailableServer} message.
          * 
          * @param serverId     The id of the server.
-         * @param numAvailable The number of tickets available on the server.
+         * @param numAvailable The number of tickets available on the server by event id.
          */
-        public MsgAvailableServer(final ServerId serverId, final int numAvailable) {
+        public MsgAvailableServer(final ServerId serverId, final Map<String, Integer> numAvailable) {
             this.serverId = serverId;
             this.numAvailable = numAvailable;
         }
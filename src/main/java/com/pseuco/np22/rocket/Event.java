@@ -0,0 +1,131 @@
+package com.pseuco.np22.rocket;
+
+/**
+ * <p>
+ * An event whose tickets are sold by the system.
+ * </p>
+ *
+ * <p>
+ * Every event has its own inventory of tickets and its own reservation timeout, while all
+ * events share the same servers. Since every event has its own {@link Database}, a hot
+ * on-sale only contends for the lock of its own inventory.
+ * </p>
+ *
+ * <p>
+ * The default event is backed by the configured database, journal and gossip. Additional
+ * events are kept on the heap of this node only, so they cannot be combined with a journal,
+ * ticket store or cluster.
+ * </p>
+ */
+public class Event {
+    /**
+     * The id of the default event, used for requests without an event id.
+     */
+    public static final String DEFAULT_ID = "default";
+
+    /**
+     * The id of the event.
+     */
+    private final String id;
+
+    /**
+     * The inventory of the event.
+     */
+    private final Database database;
+
+    /**
+     * The journal of ticket sales of the event.
+     */
+    private final Journal journal;
+
+    /**
+     * Estimates the available tickets of the event in the whole cluster.
+     */
+    private final Gossip gossip;
+
+    /**
+     * The timeout of reservations in milliseconds.
+     */
+    private final long timeout;
+
+    /**
+     * Constructs a new {@link Event}.
+     *
+     * @param id       The id of the event.
+     * @param database The inventory of the event.
+     * @param journal  The journal of ticket sales of the event.
+     * @param gossip   The gossip estimating the available tickets of the event.
+     * @param timeout  The timeout of reservations in milliseconds.
+     */
+    public Event(final String id, final Database database, final Journal journal, final Gossip gossip,
+            final long timeout) {
+        this.id = id;
+        this.database = database;
+        this.journal = journal;
+        this.gossip = gossip;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Returns the id of the event.
+     *
+     * @return The id of the event.
+     */
+    public String getId() {
+        return this.id;
+    }
+
+    /**
+     * Returns the inventory of the event.
+     *
+     * @return The inventory of the event.
+     */
+    public Database getDatabase() {
+        return this.database;
+    }
+
+    /**
+     * Returns the journal of ticket sales of the event.
+     *
+     * @return The journal of ticket sales of the event.
+     */
+    public Journal getJournal() {
+        return this.journal;
+    }
+
+    /**
+     * Returns the gossip estimating the available tickets of the event.
+     *
+     * @return The gossip of the event.
+     */
+    public Gossip getGossip() {
+        return this.gossip;
+    }
+
+    /**
+     * <p>
+     * Checks whether every ticket of the event is reserved or sold.
+     * </p>
+     *
+     * <p>
+     * The counts of the gossip are exact for events which are not shared with a cluster:
+     * tickets are counted as taken when they are reserved and as available again when a
+     * reservation is aborted or expires. For shared events, the tickets of other nodes are
+     * only estimated, so they are never considered sold out.
+     * </p>
+     *
+     * @return Whether the event is sold out.
+     */
+    public boolean isSoldOut() {
+        return !this.gossip.isEnabled() && this.gossip.getLocalNumAvailable() <= 0;
+    }
+
+    /**
+     * Returns the timeout of reservations in milliseconds.
+     *
+     * @return The timeout of reservations in milliseconds.
+     */
+    public long getTimeout() {
+        return this.timeout;
+    }
+}
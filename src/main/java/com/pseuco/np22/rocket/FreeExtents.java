@@ -0,0 +1,209 @@
+package com.pseuco.np22.rocket;
+
+/**
+ * <p>
+ * An index of the free ticket ids organized as a segment tree over id ranges.
+ * </p>
+ *
+ * <p>
+ * Every node of the tree covers a range of ids and knows the number of free ids in it, the
+ * length of the longest run of consecutive free ids and the lengths of the free runs at
+ * both of its ends. This allows finding the leftmost run of a given length and marking a
+ * whole range as free or taken in {@code O(log n)}. Range updates are applied lazily.
+ * </p>
+ *
+ * <p>
+ * The index is not thread-safe, the {@link Database} guards it with its lock.
+ * </p>
+ */
+public class FreeExtents {
+    /**
+     * No pending update of the children.
+     */
+    private static final byte NONE = 0;
+    /**
+     * The children have to be marked as free.
+     */
+    private static final byte FREE = 1;
+    /**
+     * The children have to be marked as taken.
+     */
+    private static final byte TAKEN = 2;
+
+    /**
+     * The number of ids covered by the index.
+     */
+    private final int capacity;
+
+    private final int[] free;
+    private final int[] longest;
+    private final int[] prefix;
+    private final int[] suffix;
+    private final byte[] pending;
+
+    /**
+     * Constructs a new index where all ids are taken.
+     *
+     * @param capacity The number of ids covered by the index.
+     */
+    public FreeExtents(final int capacity) {
+        this.capacity = capacity;
+        final var size = 4 * Math.max(capacity, 1);
+        this.free = new int[size];
+        this.longest = new int[size];
+        this.prefix = new int[size];
+        this.suffix = new int[size];
+        this.pending = new byte[size];
+    }
+
+    /**
+     * Returns the number of ids covered by the index.
+     *
+     * @return The number of ids covered by the index.
+     */
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Returns the number of free ids.
+     *
+     * @return The number of free ids.
+     */
+    public int getNumFree() {
+        return this.capacity == 0 ? 0 : this.free[1];
+    }
+
+    /**
+     * Marks the ids in the given range as free.
+     *
+     * @param from The first id of the range.
+     * @param to   The id after the last id of the range.
+     */
+    public void markFree(final int from, final int to) {
+        if (from < to) {
+            this.update(1, 0, this.capacity, from, to, FREE);
+        }
+    }
+
+    /**
+     * Marks the ids in the given range as taken.
+     *
+     * @param from The first id of the range.
+     * @param to   The id after the last id of the range.
+     */
+    public void markTaken(final int from, final int to) {
+        if (from < to) {
+            this.update(1, 0, this.capacity, from, to, TAKEN);
+        }
+    }
+
+    /**
+     * Returns the first id of the leftmost run of free ids with at least the given length.
+     *
+     * @param length The length of the run.
+     * @return The first id of the run or {@code -1} if there is no such run.
+     */
+    public int findRun(final int length) {
+        if (this.capacity == 0 || length <= 0 || this.longest[1] < length) {
+            return -1;
+        }
+        var node = 1;
+        var lo = 0;
+        var hi = this.capacity;
+        while (hi - lo > 1) {
+            this.push(node, lo, hi);
+            final var mid = (lo + hi) >>> 1;
+            final var left = 2 * node;
+            final var right = left + 1;
+            if (this.longest[left] >= length) {
+                node = left;
+                hi = mid;
+            } else if (this.suffix[left] + this.prefix[right] >= length) {
+                return mid - this.suffix[left];
+            } else {
+                node = right;
+                lo = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Checks whether the given id is free.
+     *
+     * @param id The id.
+     * @return Whether the id is free.
+     */
+    public boolean isFree(final int id) {
+        var node = 1;
+        var lo = 0;
+        var hi = this.capacity;
+        while (hi - lo > 1) {
+            this.push(node, lo, hi);
+            final var mid = (lo + hi) >>> 1;
+            if (id < mid) {
+                node = 2 * node;
+                hi = mid;
+            } else {
+                node = 2 * node + 1;
+                lo = mid;
+            }
+        }
+        return this.free[node] == 1;
+    }
+
+    /**
+     * Sets a node covering the given number of ids to all free or all taken.
+     */
+    private void assign(final int node, final int size, final byte mark) {
+        final var value = mark == FREE ? size : 0;
+        this.free[node] = value;
+        this.longest[node] = value;
+        this.prefix[node] = value;
+        this.suffix[node] = value;
+        this.pending[node] = mark;
+    }
+
+    /**
+     * Pushes a pending update of a node down to its children.
+     */
+    private void push(final int node, final int lo, final int hi) {
+        if (this.pending[node] != NONE) {
+            final var mid = (lo + hi) >>> 1;
+            this.assign(2 * node, mid - lo, this.pending[node]);
+            this.assign(2 * node + 1, hi - mid, this.pending[node]);
+            this.pending[node] = NONE;
+        }
+    }
+
+    /**
+     * Recomputes a node from its children.
+     */
+    private void pull(final int node, final int lo, final int hi) {
+        final var mid = (lo + hi) >>> 1;
+        final var left = 2 * node;
+        final var right = left + 1;
+        this.free[node] = this.free[left] + this.free[right];
+        this.prefix[node] = this.prefix[left] == mid - lo ? mid - lo + this.prefix[right] : this.prefix[left];
+        this.suffix[node] = this.suffix[right] == hi - mid ? hi - mid + this.suffix[left] : this.suffix[right];
+        this.longest[node] = Math.max(Math.max(this.longest[left], this.longest[right]),
+                this.suffix[left] + this.prefix[right]);
+    }
+
+    private void update(final int node, final int lo, final int hi, final int from, final int to,
+            final byte mark) {
+        if (to <= lo || hi <= from) {
+            return;
+        }
+        if (from <= lo && hi <= to) {
+            this.assign(node, hi - lo, mark);
+            return;
+        }
+        this.push(node, lo, hi);
+        final var mid = (lo + hi) >>> 1;
+        this.update(2 * node, lo, mid, from, to, mark);
+        this.update(2 * node + 1, mid, hi, from, to, mark);
+        this.pull(node, lo, hi);
+    }
+}
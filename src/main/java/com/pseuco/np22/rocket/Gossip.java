@@ -0,0 +1,283 @@
+package com.pseuco.np22.rocket;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * <p>
+ * Estimates the number of tickets available in the whole cluster by gossiping.
+ * </p>
+ *
+ * <p>
+ * Every node keeps a PN-counter: it counts the tickets which became available on the node
+ * and the tickets which were taken from it. Tickets become available when the node
+ * allocates them from the authority or a reservation is aborted, they are taken when they
+ * are reserved or leased to or returned to another node. Both counts only grow, such that
+ * the state of a node is merged by taking the maximum of each count. The tickets available
+ * on a node are the difference of its counts and the tickets available overall are the sum
+ * over all nodes with a living lease.
+ * </p>
+ *
+ * <p>
+ * Periodically, every node sends the counts of all nodes it knows of to a random peer
+ * taken from the registry and merges the counts it gets back. Hence, the estimate of every
+ * node converges to the global number of available tickets without a central coordinator,
+ * and answering how many tickets are available is a local computation.
+ * </p>
+ */
+public class Gossip implements Runnable, NodeServer.Handler {
+    /**
+     * The interval in which a digest is exchanged with a random peer in milliseconds.
+     */
+    private static final long GOSSIP_INTERVAL = 200;
+
+    /**
+     * The time to wait for the digest of a peer in milliseconds.
+     */
+    private static final long GOSSIP_TIMEOUT = 1000;
+
+    /**
+     * The id of this node.
+     */
+    private final UUID node = UUID.randomUUID();
+
+    /**
+     * The server answering digests of peers or {@code null} if gossiping is disabled.
+     */
+    private final NodeServer server;
+
+    /**
+     * The address peers reach this node at.
+     */
+    private final InetSocketAddress address;
+
+    /**
+     * The number of tickets which became available on this node.
+     */
+    private final LongAdder madeAvailable = new LongAdder();
+
+    /**
+     * The number of tickets which were taken from this node.
+     */
+    private final LongAdder taken = new LongAdder();
+
+    /**
+     * The counts of the other nodes as learned by gossiping.
+     */
+    private final ConcurrentHashMap<UUID, long[]> peers = new ConcurrentHashMap<>();
+
+    /**
+     * The registry of the cluster.
+     */
+    private volatile Supplier<List<NodeProtocol.NodeInfo>> registry = List::of;
+
+    /**
+     * The connections to peers by address, only used by the gossip thread.
+     */
+    private final Map<InetSocketAddress, NodeClient> clients = new HashMap<>();
+
+    /**
+     * Constructs a new {@link Gossip}, which is enabled in cluster mode only.
+     *
+     * @param coordinator The {@link Coordinator} of the ticket sales system.
+     * @throws IOException When the gossip address cannot be bound.
+     */
+    public Gossip(final Coordinator coordinator) throws IOException {
+        this(coordinator.getConfig().isCluster() ? coordinator.getConfig().getGossipAddress() : null);
+    }
+
+    /**
+     * Constructs a new {@link Gossip} and binds it to the given address.
+     *
+     * @param address The address to gossip on or {@code null} to disable gossiping.
+     * @throws IOException When the address cannot be bound.
+     */
+    public Gossip(final InetSocketAddress address) throws IOException {
+        if (address == null) {
+            this.server = null;
+            this.address = null;
+        } else {
+            this.server = new NodeServer(address, this);
+            this.address = new InetSocketAddress(address.getHostString(), this.server.getPort());
+        }
+    }
+
+    /**
+     * Indicates whether gossiping is enabled.
+     *
+     * @return Whether gossiping is enabled.
+     */
+    public boolean isEnabled() {
+        return this.server != null;
+    }
+
+    /**
+     * Returns the id of this node.
+     *
+     * @return The id of this node.
+     */
+    public UUID getNode() {
+        return this.node;
+    }
+
+    /**
+     * Returns the registry entry of this node.
+     *
+     * @param numServers The number of active servers of this node.
+     * @return The registry entry of this node.
+     */
+    public NodeProtocol.NodeInfo getInfo(final int numServers) {
+        return new NodeProtocol.NodeInfo(this.node, this.address, numServers);
+    }
+
+    /**
+     * Sets the source of the registry, e.g., the authority or the {@link RemoteDatabase}.
+     *
+     * @param registry The source of the registry.
+     */
+    public void setRegistry(final Supplier<List<NodeProtocol.NodeInfo>> registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Counts tickets which became available on this node.
+     *
+     * @param numTickets The number of tickets.
+     */
+    public void countAvailable(final int numTickets) {
+        this.madeAvailable.add(numTickets);
+    }
+
+    /**
+     * Counts tickets which were taken from this node.
+     *
+     * @param numTickets The number of tickets.
+     */
+    public void countTaken(final int numTickets) {
+        this.taken.add(numTickets);
+    }
+
+    /**
+     * Returns the number of tickets available on this node, i.e., neither reserved nor sold
+     * nor leased to or returned to another node.
+     *
+     * @return The number of tickets available on this node.
+     */
+    public long getLocalNumAvailable() {
+        return this.madeAvailable.sum() - this.taken.sum();
+    }
+
+    /**
+     * Returns the digest of all counts known to this node.
+     */
+    private Map<UUID, long[]> digest() {
+        final Map<UUID, long[]> digest = new HashMap<>(this.peers);
+        digest.put(this.node, new long[] { this.madeAvailable.sum(), this.taken.sum() });
+        return digest;
+    }
+
+    /**
+     * Merges the digest of a peer into the counts known to this node.
+     */
+    private void merge(final Map<UUID, long[]> digest) {
+        digest.forEach((peer, counts) -> {
+            if (!peer.equals(this.node)) {
+                this.peers.merge(peer, counts, (known, learned) -> new long[] { Math.max(known[0], learned[0]),
+                        Math.max(known[1], learned[1]) });
+            }
+        });
+    }
+
+    /**
+     * Returns the estimated number of tickets available in the whole cluster.
+     *
+     * @return The estimated number of available tickets.
+     */
+    public int getNumAvailable() {
+        final var alive = new HashSet<UUID>();
+        this.registry.get().forEach(entry -> alive.add(entry.getId()));
+        var numAvailable = this.madeAvailable.sum() - this.taken.sum();
+        for (final var entry : this.peers.entrySet()) {
+            // The tickets of nodes whose lease expired have been returned to the authority.
+            if (alive.isEmpty() || alive.contains(entry.getKey())) {
+                numAvailable += entry.getValue()[0] - entry.getValue()[1];
+            }
+        }
+        return (int) Math.max(0, Math.min(numAvailable, Integer.MAX_VALUE));
+    }
+
+    @Override
+    public void handle(final NodeServer.Session session, final byte type, final ByteBuffer request,
+            final ByteBuffer response) {
+        if (type != NodeProtocol.GOSSIP) {
+            throw new IllegalArgumentException("Unknown frame type " + type + ".");
+        }
+        this.merge(NodeProtocol.getDigest(request));
+        NodeProtocol.putDigest(response, this.digest());
+    }
+
+    /**
+     * Exchanges digests with a random peer.
+     */
+    public void gossip() {
+        final List<NodeProtocol.NodeInfo> candidates = new ArrayList<>();
+        for (final var entry : this.registry.get()) {
+            if (!entry.getId().equals(this.node) && entry.getAddress() != null && entry.getAddress().getPort() != 0) {
+                candidates.add(entry);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return;
+        }
+        final var peer = candidates.get(ThreadLocalRandom.current().nextInt(candidates.size()));
+        final var address = new InetSocketAddress(peer.getAddress().getHostString(), peer.getAddress().getPort());
+        try {
+            var client = this.clients.get(address);
+            if (client == null || client.isClosed()) {
+                client = new NodeClient(address);
+                this.clients.put(address, client);
+            }
+            final var digest = this.digest();
+            this.merge(client.call(NodeProtocol.GOSSIP, buffer -> NodeProtocol.putDigest(buffer, digest),
+                    NodeProtocol::getDigest).get(GOSSIP_TIMEOUT, TimeUnit.MILLISECONDS));
+        } catch (IOException | ExecutionException | TimeoutException error) {
+            // The peer may have crashed, we try another one next time.
+            final var client = this.clients.remove(address);
+            if (client != null) {
+                client.close();
+            }
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        final var thread = new Thread(this.server);
+        thread.setDaemon(true);
+        thread.start();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(GOSSIP_INTERVAL);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                return;
+            }
+            this.gossip();
+        }
+    }
+}
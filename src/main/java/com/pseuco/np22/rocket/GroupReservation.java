@@ -0,0 +1,131 @@
+package com.pseuco.np22.rocket;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Represents a reservation of several tickets by a specific customer, which are bought or
+ * aborted together.
+ */
+public class GroupReservation {
+    /**
+     * The reserved tickets.
+     */
+    private final List<Ticket> tickets;
+
+    /**
+     * The system time in milliseconds at which the reservation expires.
+     */
+    private long expiresAt;
+
+    /**
+     * The number of times the reservation has been extended.
+     */
+    private int numExtensions = 0;
+
+    /**
+     * Constructs a new group reservation.
+     *
+     * @param tickets The tickets that should be reserved.
+     * @param timeout The time in milliseconds after which the reservation expires.
+     */
+    public GroupReservation(final List<Ticket> tickets, final long timeout) {
+        tickets.forEach(Ticket::reserve);
+        this.tickets = tickets;
+        this.expiresAt = System.currentTimeMillis() + timeout;
+    }
+
+    /**
+     * Constructs a group reservation expiring at the given time, e.g., when it is recovered
+     * from the {@link Journal}.
+     *
+     * @param tickets   The tickets that should be reserved.
+     * @param expiresAt The system time in milliseconds at which the reservation expires.
+     * @return The group reservation.
+     */
+    public static GroupReservation until(final List<Ticket> tickets, final long expiresAt) {
+        final var group = new GroupReservation(tickets, 0);
+        group.expiresAt = expiresAt;
+        return group;
+    }
+
+    /**
+     * Returns the ids of the reserved tickets.
+     *
+     * @return The ids of the reserved tickets in the order they have been reserved.
+     */
+    public List<Integer> getTicketIds() {
+        final List<Integer> ids = new ArrayList<>(this.tickets.size());
+        this.tickets.forEach(ticket -> ids.add(ticket.getId()));
+        return ids;
+    }
+
+    /**
+     * Checks whether the given ids are exactly the ids of the reserved tickets.
+     *
+     * @param ids The ticket ids provided by the customer.
+     * @return Whether the ids match the reservation.
+     */
+    public boolean matches(final List<Integer> ids) {
+        return ids.size() == this.tickets.size() && new HashSet<>(ids).equals(new HashSet<>(this.getTicketIds()));
+    }
+
+    /**
+     * Returns the system time at which the reservation expires.
+     *
+     * @return The system time in milliseconds at which the reservation expires.
+     */
+    public long getExpiresAt() {
+        return this.expiresAt;
+    }
+
+    /**
+     * Checks whether the reservation has expired.
+     *
+     * @param now The current system time in milliseconds.
+     * @return Whether the reservation has expired.
+     */
+    public boolean isExpired(final long now) {
+        return now > this.expiresAt;
+    }
+
+    /**
+     * Returns the number of times the reservation has been extended.
+     *
+     * @return The number of extensions.
+     */
+    public int getNumExtensions() {
+        return this.numExtensions;
+    }
+
+    /**
+     * Extends the reservation such that it expires the given time from now at the earliest.
+     *
+     * @param timeout The time in milliseconds after which the reservation expires now.
+     */
+    public void extend(final long timeout) {
+        this.expiresAt = Math.max(this.expiresAt, System.currentTimeMillis() + timeout);
+        this.numExtensions++;
+    }
+
+    /**
+     * Aborts the reservation and returns the tickets.
+     *
+     * @return The tickets associated with the reservation.
+     */
+    public List<Ticket> abort() {
+        this.tickets.forEach(Ticket::abort);
+        return this.tickets;
+    }
+
+    /**
+     * Marks the tickets as sold and returns them.
+     *
+     * @return The tickets associated with the reservation.
+     */
+    public List<Ticket> sell() {
+        this.tickets.forEach(Ticket::sell);
+        return this.tickets;
+    }
+}
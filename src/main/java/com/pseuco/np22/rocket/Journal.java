@@ -0,0 +1,401 @@
+package com.pseuco.np22.rocket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import com.pseuco.np22.request.CustomerId;
+
+/**
+ * <p>
+ * An append-only write-ahead log of ticket state changes.
+ * </p>
+ *
+ * <p>
+ * Servers append <em>reserve</em>, <em>sell</em> and <em>abort</em> records concurrently.
+ * Reserve records carry the deadline of the hold instead of the time they have been
+ * written at, such that a restart restores the timeout of the customer's tier.
+ * The records are collected in a shared buffer and written to disk by a single flusher
+ * thread ({@link #run}), which syncs all records of a batch with one {@code fsync}
+ * (<em>group commit</em>). Sales are only confirmed to the customer once the batch
+ * containing them has been written according to the {@link SyncPolicy}.
+ * </p>
+ *
+ * <p>
+ * The log is split into segments (see {@link #segmentPath}). Once a segment has grown
+ * beyond {@link #SEGMENT_SIZE}, the flusher continues in the next one, such that the
+ * {@link Snapshotter} can delete the segments covered by a snapshot.
+ * </p>
+ */
+public class Journal implements Runnable {
+    /**
+     * Determines when the journal forces written records to the disk.
+     */
+    public static enum SyncPolicy {
+        /**
+         * Every batch is forced to the disk before the sales in it are confirmed.
+         */
+        BATCH,
+        /**
+         * Batches are written immediately but forced to the disk at most once per sync
+         * interval. A sale is confirmed once it has been handed over to the operating system.
+         */
+        INTERVAL,
+        /**
+         * Batches are written but never forced, the operating system decides when to write
+         * them back.
+         */
+        NONE;
+    }
+
+    /**
+     * The kinds of records stored in the journal.
+     */
+    public static enum RecordType {
+        /**
+         * A ticket has been reserved by a customer.
+         */
+        RESERVE,
+        /**
+         * A reserved ticket has been sold.
+         */
+        SELL,
+        /**
+         * A reservation has been aborted or has expired.
+         */
+        ABORT;
+    }
+
+    /**
+     * The size of a record in bytes: type (1), ticket id (4), customer id (16),
+     * timestamp (8), i.e., the deadline of the hold for reserve records, and CRC32
+     * checksum (4).
+     */
+    public static final int RECORD_SIZE = 33;
+
+    /**
+     * The capacity of the buffer collecting a batch of records.
+     */
+    private static final int BATCH_CAPACITY = 2048 * RECORD_SIZE;
+
+    /**
+     * The size in bytes after which the flusher continues in the next segment.
+     */
+    public static final long SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * The path of the first segment, {@code null} if journaling is disabled.
+     */
+    private final Path path;
+
+    /**
+     * The generation of the segment which is currently written.
+     */
+    private long generation;
+
+    /**
+     * The channel of the current segment, {@code null} if journaling is disabled.
+     */
+    private FileChannel channel;
+
+    /**
+     * The sync policy of the journal.
+     */
+    private final SyncPolicy syncPolicy;
+
+    /**
+     * The sync interval in milliseconds for {@link SyncPolicy#INTERVAL}.
+     */
+    private final long syncInterval;
+
+    /**
+     * Lock protecting the batch which is currently collected.
+     */
+    private final ReentrantLock journalLock = new ReentrantLock();
+    /**
+     * Signaled when records have been added to the current batch.
+     */
+    private final Condition isThereBatchToWrite = journalLock.newCondition();
+    /**
+     * Signaled when the current batch has been handed over to the flusher.
+     */
+    private final Condition isThereSpaceInBatch = journalLock.newCondition();
+
+    /**
+     * The records of the batch which is currently collected.
+     */
+    private ByteBuffer batch = ByteBuffer.allocateDirect(BATCH_CAPACITY);
+    /**
+     * The records of the batch which is currently written by the flusher.
+     */
+    private ByteBuffer writing = ByteBuffer.allocateDirect(BATCH_CAPACITY);
+
+    /**
+     * Callbacks to run once the current batch is durable.
+     */
+    private List<Runnable> batchCallbacks = new ArrayList<>();
+    /**
+     * Callbacks to run once the batch which is currently written is durable.
+     */
+    private List<Runnable> writingCallbacks = new ArrayList<>();
+
+    /**
+     * The system time of the last {@code fsync}.
+     */
+    private long lastSync = System.currentTimeMillis();
+
+    /**
+     * Whether data has been written since the last {@code fsync}.
+     */
+    private boolean unsynced = false;
+
+    /**
+     * Used to compute the checksum of records.
+     */
+    private final CRC32 checksum = new CRC32();
+
+    /**
+     * Constructs a new {@link Journal} appending to the given segment of the log.
+     *
+     * @param path         The path of the log file or {@code null} to disable journaling.
+     * @param generation   The generation of the segment to append to, i.e., the last one.
+     * @param syncPolicy   The sync policy of the journal.
+     * @param syncInterval The sync interval in milliseconds.
+     * @throws IOException When the log file cannot be opened.
+     */
+    public Journal(final Path path, final long generation, final SyncPolicy syncPolicy, final long syncInterval)
+            throws IOException {
+        this.path = path;
+        this.generation = generation;
+        this.syncPolicy = syncPolicy;
+        this.syncInterval = syncInterval;
+        if (path == null) {
+            this.channel = null;
+        } else {
+            this.channel = this.openSegment();
+        }
+    }
+
+    /**
+     * Returns the path of a segment of the log. The first segment is stored at the path
+     * of the log itself, later ones get their generation appended.
+     *
+     * @param path       The path of the log file.
+     * @param generation The generation of the segment.
+     * @return The path of the segment.
+     */
+    public static Path segmentPath(final Path path, final long generation) {
+        if (generation == 0) {
+            return path;
+        }
+        return path.resolveSibling(path.getFileName() + "." + generation);
+    }
+
+    /**
+     * Opens the segment of the current generation for appending.
+     */
+    private FileChannel openSegment() throws IOException {
+        return FileChannel.open(segmentPath(this.path, this.generation), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Continues in the next segment once the current one is full. The current segment is
+     * forced to the disk first, as it is never synced again afterwards, and all of its
+     * records have been written before the next segment appears.
+     */
+    private void rotate() throws IOException {
+        if (this.channel.size() < SEGMENT_SIZE) {
+            return;
+        }
+        this.channel.force(false);
+        this.channel.close();
+        this.generation++;
+        this.channel = this.openSegment();
+        this.lastSync = System.currentTimeMillis();
+        this.unsynced = false;
+    }
+
+    /**
+     * Returns whether journaling is enabled.
+     *
+     * @return Whether journaling is enabled.
+     */
+    public boolean isEnabled() {
+        return this.channel != null;
+    }
+
+    /**
+     * Logs the reservation of a ticket or its extension.
+     *
+     * @param ticketId  The id of the reserved ticket.
+     * @param customer  The customer who reserved the ticket.
+     * @param expiresAt The system time at which the reservation expires.
+     */
+    public void logReserve(final int ticketId, final CustomerId customer, final long expiresAt) {
+        this.append(RecordType.RESERVE, ticketId, customer, expiresAt, null);
+    }
+
+    /**
+     * Logs that a reservation has been aborted or has expired.
+     *
+     * @param ticketId The id of the ticket which is available again.
+     */
+    public void logAbort(final int ticketId) {
+        this.append(RecordType.ABORT, ticketId, null, System.currentTimeMillis(), null);
+    }
+
+    /**
+     * <p>
+     * Logs the sale of a ticket.
+     * </p>
+     *
+     * <p>
+     * The callback is run by the flusher thread once the sale has been written according to
+     * the sync policy. Use it to confirm the sale to the customer.
+     * </p>
+     *
+     * @param ticketId  The id of the sold ticket.
+     * @param onDurable The callback to run once the sale is durable.
+     */
+    public void logSell(final int ticketId, final Runnable onDurable) {
+        this.append(RecordType.SELL, ticketId, null, System.currentTimeMillis(), onDurable);
+    }
+
+    /**
+     * Appends a record to the current batch.
+     */
+    private void append(final RecordType type, final int ticketId, final CustomerId customer,
+            final long timestamp, final Runnable onDurable) {
+        if (!this.isEnabled()) {
+            if (onDurable != null) {
+                onDurable.run();
+            }
+            return;
+        }
+        journalLock.lock();
+        try {
+            while (batch.remaining() < RECORD_SIZE) {
+                isThereSpaceInBatch.awaitUninterruptibly();
+            }
+            final int start = batch.position();
+            batch.put((byte) type.ordinal());
+            batch.putInt(ticketId);
+            batch.putLong(customer == null ? 0 : customer.getUUID().getMostSignificantBits());
+            batch.putLong(customer == null ? 0 : customer.getUUID().getLeastSignificantBits());
+            batch.putLong(timestamp);
+            checksum.reset();
+            checksum.update(batch.duplicate().position(start).limit(batch.position()));
+            batch.putInt((int) checksum.getValue());
+            if (onDurable != null) {
+                batchCallbacks.add(onDurable);
+            }
+            isThereBatchToWrite.signal();
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    /**
+     * Takes the current batch for writing, waiting for records if there are none.
+     *
+     * @return Whether there is a batch to write.
+     */
+    private boolean takeBatch() throws InterruptedException {
+        journalLock.lock();
+        try {
+            if (batch.position() == 0) {
+                if (this.syncPolicy == SyncPolicy.INTERVAL && this.unsynced) {
+                    // Wake up in time for the next periodic sync.
+                    isThereBatchToWrite.await(this.syncInterval, TimeUnit.MILLISECONDS);
+                } else {
+                    isThereBatchToWrite.await();
+                }
+            }
+            if (batch.position() == 0) {
+                return false;
+            }
+            // Swap the buffers such that servers can continue appending.
+            final var full = this.batch;
+            this.batch = this.writing;
+            this.writing = full;
+            final var callbacks = this.batchCallbacks;
+            this.batchCallbacks = this.writingCallbacks;
+            this.writingCallbacks = callbacks;
+            isThereSpaceInBatch.signalAll();
+            return true;
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    /**
+     * Forces written records to the disk if required by the sync policy.
+     */
+    private void sync(final boolean afterBatch) throws IOException {
+        final var now = System.currentTimeMillis();
+        final boolean force;
+        switch (this.syncPolicy) {
+            case BATCH:
+                force = afterBatch;
+                break;
+            case INTERVAL:
+                force = this.unsynced && now - this.lastSync >= this.syncInterval;
+                break;
+            default:
+                force = false;
+                break;
+        }
+        if (force) {
+            this.channel.force(false);
+            this.lastSync = now;
+            this.unsynced = false;
+        }
+    }
+
+    @Override
+    public void run() {
+        /*
+         * The flusher writes one batch at a time. While a batch is written and synced,
+         * servers append to the other buffer, so the records of all sales arriving during an
+         * fsync are made durable by the next fsync.
+         */
+        try {
+            while (true) {
+                final boolean haveBatch = this.takeBatch();
+                if (haveBatch) {
+                    writing.flip();
+                    while (writing.hasRemaining()) {
+                        this.channel.write(writing);
+                    }
+                    writing.clear();
+                    this.unsynced = true;
+                }
+                this.sync(haveBatch);
+                if (haveBatch) {
+                    // The sales of this batch are durable now, confirm them.
+                    for (final var callback : writingCallbacks) {
+                        callback.run();
+                    }
+                    writingCallbacks.clear();
+                    this.rotate();
+                }
+            }
+        } catch (IOException error) {
+            // We cannot confirm any further sale without losing it on a crash.
+            System.err.println("Unable to write the journal. Terminating!");
+            error.printStackTrace();
+            System.exit(1);
+        } catch (InterruptedException error) {
+            error.printStackTrace();
+        }
+    }
+}
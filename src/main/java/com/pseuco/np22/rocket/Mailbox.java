@@ -13,7 +13,7 @@ import java.util.concurrent.locks.ReentrantLock;
 public class Mailbox<M> {
 
     private Queue<M> LowMailBox = new LinkedList<>();
-    private Queue<M> HighMailBox = new LinkedList<>();;
+    private LinkedList<M> HighMailBox = new LinkedList<>();
     private ReentrantLock MailboxLock;
     private Condition IsThereMessageToRecev;
 
@@ -28,6 +28,78 @@ public class Mailbox<M> {
 
     private MailboxState mailboxState = MailboxState.OPEN;
 
+    /**
+     * Called after a message has been sent, {@code null} if the receiver blocks in
+     * {@link #recv}.
+     */
+    private volatile Runnable onSend = null;
+
+    /**
+     * <p>
+     * A message with high priority which supersedes earlier messages with the same key.
+     * </p>
+     * 
+     * <p>
+     * When such a message is sent while a message with the same key has not been received
+     * yet, the new message takes the place of the old one. Hence, the high priority lane
+     * holds at most one message per key, e.g., only the latest estimate of the
+     * {@link Estimator}.
+     * </p>
+     */
+    public static interface Coalescing {
+        /**
+         * Returns the key of the message.
+         * 
+         * @return The key, messages with equal keys are coalesced.
+         */
+        Object getCoalescingKey();
+    }
+
+    /**
+     * Replaces a pending message with high priority with the same key, the caller must hold
+     * the lock.
+     * 
+     * @return Whether a pending message has been replaced.
+     */
+    private boolean coalesce(M message) {
+        if (!(message instanceof Coalescing)) {
+            return false;
+        }
+        final var key = ((Coalescing) message).getCoalescingKey();
+        final var pending = HighMailBox.listIterator();
+        while (pending.hasNext()) {
+            final var other = pending.next();
+            if (other instanceof Coalescing && key.equals(((Coalescing) other).getCoalescingKey())) {
+                pending.set(message);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The outcome of sending a message with low priority.
+     */
+    public static enum SendResult {
+        /**
+         * The message has been added to the mailbox.
+         */
+        SENT,
+        /**
+         * The low priority lane is at its capacity, the message has been rejected.
+         */
+        FULL,
+        /**
+         * The mailbox is closed, the message has been rejected.
+         */
+        CLOSED;
+    }
+
+    /**
+     * The maximal number of messages in the low priority lane, {@code 0} means unbounded.
+     */
+    private final int lowPriorityCapacity;
+
     /**
      * Check if the Mail Box OPEN
      */
@@ -60,8 +132,40 @@ public class Mailbox<M> {
      * Constructs a new empty {@link Mailbox}.
      */
     public Mailbox() {
+        this(0);
+    }
+
+    /**
+     * Constructs a new empty {@link Mailbox} with a bounded low priority lane.
+     * 
+     * @param lowPriorityCapacity The maximal number of messages with low priority, {@code 0}
+     *                            means unbounded. Messages with high priority are always
+     *                            admitted.
+     */
+    public Mailbox(final int lowPriorityCapacity) {
         this.MailboxLock = new ReentrantLock();
         this.IsThereMessageToRecev = MailboxLock.newCondition();
+        this.lowPriorityCapacity = lowPriorityCapacity;
+    }
+
+    /**
+     * Sets a callback which is called after every message sent to the mailbox, e.g., to
+     * schedule a receiver which does not block in {@link #recv}.
+     * 
+     * @param onSend The callback.
+     */
+    public void setOnSend(final Runnable onSend) {
+        this.onSend = onSend;
+    }
+
+    /**
+     * Calls the callback after a message has been sent, without holding the lock.
+     */
+    protected void notifySent() {
+        final var onSend = this.onSend;
+        if (onSend != null) {
+            onSend.run();
+        }
     }
 
     /**
@@ -79,27 +183,47 @@ public class Mailbox<M> {
 
     }
 
+    /**
+     * Returns the number of messages with low priority waiting in the mailbox.
+     * 
+     * @return The number of messages with low priority.
+     */
+    public int size() {
+        MailboxLock.lock();
+        try {
+            return LowMailBox.size();
+        } finally {
+            MailboxLock.unlock();
+        }
+    }
+
     /**
      * Tries to send a message with low priority.
      * 
      * @param message The message.
-     * @return Indicates whether the message has been sent.
+     * @return Indicates whether the message has been sent or why it has been rejected.
      */
-    public boolean sendLowPriority(M message) {
+    public SendResult sendLowPriority(M message) {
+        SendResult result;
         MailboxLock.lock();
         try {
-            if (isMailboxOpen()) {
-                boolean messageAdd = LowMailBox.add(message);
-                IsThereMessageToRecev.signal();
-                return messageAdd;
+            if (!isMailboxOpen()) {
+                result = SendResult.CLOSED;
+            } else if (lowPriorityCapacity > 0 && LowMailBox.size() >= lowPriorityCapacity) {
+                result = SendResult.FULL;
             } else {
-                return false;
+                LowMailBox.add(message);
+                IsThereMessageToRecev.signal();
+                result = SendResult.SENT;
             }
 
         } finally {
             MailboxLock.unlock();
         }
-
+        if (result == SendResult.SENT) {
+            notifySent();
+        }
+        return result;
     }
 
     /**
@@ -112,16 +236,20 @@ public class Mailbox<M> {
         MailboxLock.lock();
         try {
             if (isMailboxOpen()) {
-                boolean messageAdd = HighMailBox.add(message);
+                if (coalesce(message)) {
+                    // the receiver is already signalled for the replaced message
+                    return true;
+                }
+                HighMailBox.add(message);
                 IsThereMessageToRecev.signal();
-                return messageAdd;
             } else {
                 return false;
             }
         } finally {
             MailboxLock.unlock();
         }
-
+        notifySent();
+        return true;
     }
 
     /**
@@ -159,6 +287,23 @@ public class Mailbox<M> {
 
     }
 
+    /**
+     * Blocks the receiving thread until a message is available without taking it, e.g.,
+     * such that the receiver can take it with {@link #tryRecv} while holding another lock.
+     * 
+     * @throws InterruptedException The thread has been interrupted.
+     */
+    public void awaitMessage() throws InterruptedException {
+        MailboxLock.lock();
+        try {
+            while ((LowMailBox.isEmpty() && HighMailBox.isEmpty())) {
+                IsThereMessageToRecev.await();
+            }
+        } finally {
+            MailboxLock.unlock();
+        }
+    }
+
     /**
      * <p>
      * Tries to receive a message without blocking.
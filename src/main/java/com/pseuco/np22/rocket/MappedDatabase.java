@@ -0,0 +1,268 @@
+package com.pseuco.np22.rocket;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * A {@link Database} keeping the state of every ticket in a memory-mapped file.
+ * </p>
+ *
+ * <p>
+ * Each ticket owns a slot of four bytes outside of the Java heap. State transitions are
+ * performed by an atomic compare-and-set on the slot, so servers claim tickets directly
+ * without taking a global lock and without keeping a {@link Ticket} object for every
+ * ticket of the inventory. Sold tickets remain sold after a restart because the
+ * operating system writes the mapping back to the file.
+ * </p>
+ */
+public class MappedDatabase extends Database {
+    /**
+     * Marks a ticket store file.
+     */
+    private static final int MAGIC = 0x524B5453;
+
+    /**
+     * The size of the file header in bytes.
+     */
+    private static final int HEADER_SIZE = 16;
+
+    /**
+     * The ticket is available in the database.
+     */
+    private static final int AVAILABLE = 0;
+    /**
+     * The ticket has been allocated to a server but is not reserved.
+     */
+    private static final int ALLOCATED = 1;
+    /**
+     * The ticket has been reserved by a customer.
+     */
+    private static final int RESERVED = 2;
+    /**
+     * The ticket has been sold to a customer.
+     */
+    private static final int SOLD = 3;
+
+    /**
+     * Provides atomic access to the slots of the mapping.
+     */
+    private static final VarHandle SLOT = MethodHandles.byteBufferViewVarHandle(int[].class,
+            ByteOrder.nativeOrder());
+
+    /**
+     * The mapping of the ticket store file.
+     */
+    private final MappedByteBuffer slots;
+
+    /**
+     * The number of tickets in the store.
+     */
+    private final int numTickets;
+
+    /**
+     * The number of tickets available in the database.
+     */
+    private final AtomicInteger numAvailable = new AtomicInteger();
+
+    /**
+     * The id of the next ticket which has never been allocated since the start.
+     */
+    private final AtomicInteger cursor = new AtomicInteger();
+
+    /**
+     * The ids of tickets which have been returned to the database.
+     */
+    private final ConcurrentLinkedQueue<Integer> returned = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Constructs a new {@link MappedDatabase} backed by the configured ticket store file.
+     *
+     * @param coordinator The {@link Coordinator} of the ticket sales system.
+     * @throws IOException When the ticket store file cannot be mapped.
+     */
+    public MappedDatabase(final Coordinator coordinator) throws IOException {
+        super();
+        final Path path = coordinator.getConfig().getTicketStorePath();
+        this.numTickets = coordinator.getConfig().getNumTickets();
+        try (final var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            final var size = HEADER_SIZE + (long) this.numTickets * Integer.BYTES;
+            final var isNew = channel.size() == 0;
+            if (!isNew && channel.size() != size) {
+                throw new IOException("Ticket store does not match the number of tickets: " + path);
+            }
+            this.slots = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        this.slots.order(ByteOrder.nativeOrder());
+        if (this.slots.getInt(0) == 0) {
+            this.slots.putInt(0, MAGIC);
+            this.slots.putInt(4, this.numTickets);
+        } else if (this.slots.getInt(0) != MAGIC) {
+            throw new IOException("Not a ticket store file: " + path);
+        }
+        this.recover(coordinator);
+        // Write the mapping back to the file on a clean shutdown.
+        Runtime.getRuntime().addShutdownHook(new Thread(this.slots::force));
+    }
+
+    /**
+     * <p>
+     * Brings the slots into a consistent state after a restart.
+     * </p>
+     *
+     * <p>
+     * Allocations do not survive a restart. Reservations survive only if they are still
+     * recorded by the journal, which also restores sales lost together with the page cache.
+     * </p>
+     */
+    private void recover(final Coordinator coordinator) {
+        final var image = coordinator.getSnapshotter().getImage();
+        final var journaled = coordinator.getSnapshotter().isEnabled();
+        final var now = System.currentTimeMillis();
+        var available = 0;
+        for (var id = 0; id < this.numTickets; id++) {
+            var state = this.getSlot(id);
+            if (journaled && image.isSold(id)) {
+                state = SOLD;
+            } else if (state == ALLOCATED || state == RESERVED) {
+                state = AVAILABLE;
+            }
+            if (state == AVAILABLE && journaled) {
+                final var hold = image.getHold(id);
+                if (hold != null && now <= hold.getExpiresAt()) {
+                    this.setSlot(id, ALLOCATED);
+                    this.recoverHold(hold, new MappedTicket(id));
+                    continue;
+                }
+            }
+            this.setSlot(id, state);
+            if (state == AVAILABLE) {
+                available++;
+            }
+        }
+        this.finishRecovery();
+        this.numAvailable.set(available);
+    }
+
+    /**
+     * Returns the offset of the slot of a ticket.
+     */
+    private static int offset(final int ticketId) {
+        return HEADER_SIZE + ticketId * Integer.BYTES;
+    }
+
+    /**
+     * Returns the state stored in the slot of a ticket.
+     */
+    private int getSlot(final int ticketId) {
+        return (int) SLOT.getVolatile(this.slots, offset(ticketId));
+    }
+
+    /**
+     * Stores a state in the slot of a ticket.
+     */
+    private void setSlot(final int ticketId, final int state) {
+        SLOT.setVolatile(this.slots, offset(ticketId), state);
+    }
+
+    /**
+     * Atomically changes the state stored in the slot of a ticket.
+     */
+    private boolean casSlot(final int ticketId, final int expected, final int state) {
+        return SLOT.compareAndSet(this.slots, offset(ticketId), expected, state);
+    }
+
+    @Override
+    public int getNumAvailable() {
+        return this.numAvailable.get();
+    }
+
+    @Override
+    public List<Ticket> allocate(final int numTickets) {
+        final List<Ticket> allocatedTickets = new ArrayList<>();
+        while (allocatedTickets.size() < numTickets && this.numAvailable.get() > 0) {
+            // Prefer returned tickets, then continue with the tickets never allocated before.
+            var ticketId = this.returned.poll();
+            if (ticketId == null) {
+                if (this.cursor.get() >= this.numTickets) {
+                    break;
+                }
+                ticketId = this.cursor.getAndIncrement();
+                if (ticketId >= this.numTickets) {
+                    break;
+                }
+            }
+            // Sold tickets are simply skipped by the cursor.
+            if (this.casSlot(ticketId, AVAILABLE, ALLOCATED)) {
+                this.numAvailable.decrementAndGet();
+                allocatedTickets.add(new MappedTicket(ticketId));
+            }
+        }
+        return allocatedTickets;
+    }
+
+    @Override
+    public void deallocate(final Iterable<Ticket> tickets) {
+        tickets.forEach((ticket) -> {
+            final var isReturned = this.casSlot(ticket.getId(), ALLOCATED, AVAILABLE);
+            assert isReturned : "Ticket is not allocated!";
+            this.returned.add(ticket.getId());
+            this.numAvailable.incrementAndGet();
+        });
+    }
+
+    /**
+     * A {@link Ticket} whose state lives in a slot of the mapping.
+     */
+    private class MappedTicket extends Ticket {
+        /**
+         * Constructs a new ticket with the provided <em>id</em>.
+         *
+         * @param id The id of the ticket.
+         */
+        public MappedTicket(final int id) {
+            super(id);
+        }
+
+        @Override
+        public State getState() {
+            switch (MappedDatabase.this.getSlot(this.getId())) {
+                case RESERVED:
+                    return State.RESERVED;
+                case SOLD:
+                    return State.SOLD;
+                default:
+                    return State.AVAILABLE;
+            }
+        }
+
+        @Override
+        public void reserve() {
+            final var isReserved = MappedDatabase.this.casSlot(this.getId(), ALLOCATED, RESERVED);
+            assert isReserved : "Ticket is not available!";
+        }
+
+        @Override
+        public void abort() {
+            final var isAborted = MappedDatabase.this.casSlot(this.getId(), RESERVED, ALLOCATED);
+            assert isAborted : "Ticket is not reserved!";
+        }
+
+        @Override
+        public void sell() {
+            final var isSold = MappedDatabase.this.casSlot(this.getId(), RESERVED, SOLD);
+            assert isSold : "Ticket is not reserved!";
+        }
+    }
+}
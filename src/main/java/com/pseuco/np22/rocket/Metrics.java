@@ -0,0 +1,163 @@
+package com.pseuco.np22.rocket;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * Counters describing the load of the ticket sales system.
+ * </p>
+ *
+ * <p>
+ * The counters are updated concurrently by the {@link Balancer} and the servers, hence,
+ * they are implemented with {@link LongAdder}s which scale with the number of threads.
+ * </p>
+ */
+public class Metrics {
+    /**
+     * The number of requests handed over to servers.
+     */
+    private final LongAdder requests = new LongAdder();
+
+    /**
+     * The number of requests rejected because all mailboxes were full.
+     */
+    private final LongAdder shed = new LongAdder();
+
+    /**
+     * The number of requests rejected because their customer exceeded its rate.
+     */
+    private final LongAdder limited = new LongAdder();
+
+    /**
+     * The number of requests dropped by servers because their deadline has passed.
+     */
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * Histogram of request latencies, bucket {@code i} counts latencies below {@code 2^i}
+     * microseconds.
+     */
+    private final AtomicLongArray latencies = new AtomicLongArray(Long.SIZE);
+
+    /**
+     * Counts a request handed over to a server.
+     */
+    public void countRequest() {
+        this.requests.increment();
+    }
+
+    /**
+     * Counts a request rejected because all mailboxes were full.
+     */
+    public void countShed() {
+        this.shed.increment();
+    }
+
+    /**
+     * Counts a request rejected because its customer exceeded its rate.
+     */
+    public void countLimited() {
+        this.limited.increment();
+    }
+
+    /**
+     * Counts a request dropped because its deadline has passed.
+     */
+    public void countDropped() {
+        this.dropped.increment();
+    }
+
+    /**
+     * Records the latency of a processed request.
+     *
+     * @param nanos The time from the arrival of the request until it has been processed in
+     *              nanoseconds.
+     */
+    public void recordLatency(final long nanos) {
+        final var micros = Math.max(nanos / 1000, 0);
+        this.latencies.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(micros));
+    }
+
+    /**
+     * Returns the latency histogram recorded since the last call and resets it.
+     *
+     * @return The latency histogram, bucket {@code i} counts latencies below {@code 2^i}
+     *         microseconds.
+     */
+    public long[] takeLatencies() {
+        final var histogram = new long[this.latencies.length()];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = this.latencies.getAndSet(i, 0);
+        }
+        return histogram;
+    }
+
+    /**
+     * Returns an upper bound of the given percentile of a latency histogram.
+     *
+     * @param histogram  The latency histogram as returned by {@link #takeLatencies}.
+     * @param percentile The percentile between {@code 0} and {@code 1}.
+     * @return The upper bound in microseconds or {@code 0} if no latency has been recorded.
+     */
+    public static long percentile(final long[] histogram, final double percentile) {
+        var total = 0L;
+        for (final var count : histogram) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        final var rank = (long) Math.ceil(total * percentile);
+        var seen = 0L;
+        for (int i = 0; i < histogram.length; i++) {
+            seen += histogram[i];
+            if (seen >= rank) {
+                return 1L << i;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns the number of requests handed over to servers.
+     *
+     * @return The number of requests handed over to servers.
+     */
+    public long getRequests() {
+        return this.requests.sum();
+    }
+
+    /**
+     * Returns the number of requests rejected because all mailboxes were full.
+     *
+     * @return The number of requests rejected because all mailboxes were full.
+     */
+    public long getShed() {
+        return this.shed.sum();
+    }
+
+    /**
+     * Returns the number of requests rejected because their customer exceeded its rate.
+     *
+     * @return The number of requests rejected because their customer exceeded its rate.
+     */
+    public long getLimited() {
+        return this.limited.sum();
+    }
+
+    /**
+     * Returns the number of requests dropped because their deadline has passed.
+     *
+     * @return The number of requests dropped because their deadline has passed.
+     */
+    public long getDropped() {
+        return this.dropped.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("requests: %d\nshed: %d\nlimited: %d\ndropped: %d\n", this.getRequests(),
+                this.getShed(), this.getLimited(), this.getDropped());
+    }
+}
@@ -0,0 +1,288 @@
+package com.pseuco.np22.rocket;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>
+ * A connection to a {@link NodeServer} sending pipelined {@link NodeProtocol} requests.
+ * </p>
+ *
+ * <p>
+ * Any thread may issue requests concurrently. A request is appended to a shared outgoing
+ * buffer and answered through a {@link CompletableFuture}. A single I/O thread writes all
+ * requests appended since its last write at once and completes the futures as responses
+ * arrive. Responses are decoded directly from the reused incoming buffer.
+ * </p>
+ */
+public class NodeClient implements Runnable, Closeable {
+    /**
+     * Writes the payload of a request.
+     */
+    public interface Encoder {
+        /**
+         * Writes the payload of a request.
+         *
+         * @param payload The buffer to write the payload to.
+         */
+        void encode(ByteBuffer payload);
+    }
+
+    /**
+     * Reads the payload of a response, must not keep a reference to the buffer.
+     */
+    public interface Decoder<T> {
+        /**
+         * Reads the payload of a response.
+         *
+         * @param payload The buffer containing exactly the payload.
+         * @return The decoded response.
+         */
+        T decode(ByteBuffer payload);
+    }
+
+    /**
+     * A request waiting for its response.
+     */
+    private static class Pending<T> {
+        /**
+         * Reads the payload of the response.
+         */
+        private final Decoder<T> decoder;
+        /**
+         * Completed with the decoded response.
+         */
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        /**
+         * Constructs a new {@link Pending} request.
+         */
+        private Pending(final Decoder<T> decoder) {
+            this.decoder = decoder;
+        }
+
+        /**
+         * Completes the request with the payload of its response.
+         */
+        private void complete(final ByteBuffer payload) {
+            try {
+                this.future.complete(this.decoder.decode(payload));
+            } catch (RuntimeException error) {
+                this.future.completeExceptionally(error);
+            }
+        }
+    }
+
+    /**
+     * The channel of the connection.
+     */
+    private final SocketChannel channel;
+    /**
+     * The selector of the I/O thread.
+     */
+    private final Selector selector;
+    /**
+     * The key of the channel, interested in writes while requests are pending.
+     */
+    private final SelectionKey key;
+
+    /**
+     * Lock protecting the outgoing buffer.
+     */
+    private final ReentrantLock outLock = new ReentrantLock();
+
+    /**
+     * Signaled when there is space in the outgoing buffer.
+     */
+    private final Condition isThereSpace = outLock.newCondition();
+
+    /**
+     * The requests which have not been written yet.
+     */
+    private final ByteBuffer out = ByteBuffer.allocateDirect(NodeProtocol.BUFFER_SIZE);
+    /**
+     * The responses which have not been decoded yet.
+     */
+    private final ByteBuffer in = ByteBuffer.allocateDirect(NodeProtocol.BUFFER_SIZE);
+
+    /**
+     * The requests waiting for their responses by request id.
+     */
+    private final ConcurrentHashMap<Long, Pending<?>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * The id of the next request.
+     */
+    private final AtomicLong nextId = new AtomicLong();
+
+    /**
+     * Indicates whether the connection has been closed.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Constructs a new {@link NodeClient}, connects it and starts its I/O thread.
+     *
+     * @param address The address of the {@link NodeServer}.
+     * @throws IOException When the server cannot be reached.
+     */
+    public NodeClient(final InetSocketAddress address) throws IOException {
+        this.channel = SocketChannel.open(address);
+        this.channel.socket().setTcpNoDelay(true);
+        this.channel.configureBlocking(false);
+        this.selector = Selector.open();
+        this.key = this.channel.register(this.selector, SelectionKey.OP_READ);
+        this.in.flip();
+        final var thread = new Thread(this);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Indicates whether the connection has been closed, e.g., because the server crashed.
+     *
+     * @return Whether the connection has been closed.
+     */
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    /**
+     * Sends a request without waiting for its response.
+     *
+     * @param type    The type of the request.
+     * @param encoder Writes the payload of the request.
+     * @param decoder Reads the payload of the response.
+     * @return The future of the decoded response, failing if the connection is lost.
+     */
+    public <T> CompletableFuture<T> call(final byte type, final Encoder encoder, final Decoder<T> decoder) {
+        final var id = this.nextId.getAndIncrement();
+        final var request = new Pending<T>(decoder);
+        this.pending.put(id, request);
+        final boolean wasEmpty;
+        outLock.lock();
+        try {
+            while (!this.closed && this.out.remaining() < NodeProtocol.HEADER_SIZE + NodeProtocol.MAX_PAYLOAD_SIZE) {
+                isThereSpace.awaitUninterruptibly();
+            }
+            if (this.closed) {
+                this.pending.remove(id);
+                request.future.completeExceptionally(new IOException("Connection closed."));
+                return request.future;
+            }
+            final var start = this.out.position();
+            this.out.putInt(0).put(type).putLong(id);
+            encoder.encode(this.out);
+            this.out.putInt(start, this.out.position() - start - 4);
+            wasEmpty = start == 0;
+        } finally {
+            outLock.unlock();
+        }
+        // Requests appended to a non-empty buffer are written together with the first one.
+        if (wasEmpty) {
+            this.selector.wakeup();
+        }
+        return request.future;
+    }
+
+    /**
+     * Writes the outgoing buffer and updates the interest of the selection key.
+     */
+    private void flush() throws IOException {
+        outLock.lock();
+        try {
+            if (this.out.position() == 0) {
+                this.key.interestOps(SelectionKey.OP_READ);
+                return;
+            }
+            this.out.flip();
+            this.channel.write(this.out);
+            this.out.compact();
+            this.key.interestOps(SelectionKey.OP_READ | (this.out.position() > 0 ? SelectionKey.OP_WRITE : 0));
+            isThereSpace.signalAll();
+        } finally {
+            outLock.unlock();
+        }
+    }
+
+    /**
+     * Reads responses and completes the corresponding futures.
+     */
+    private void receive() throws IOException {
+        this.in.compact();
+        final var read = this.channel.read(this.in);
+        this.in.flip();
+        if (read < 0) {
+            throw new IOException("Connection closed by server.");
+        }
+        while (this.in.remaining() >= 4) {
+            final var start = this.in.position();
+            final var length = this.in.getInt(start);
+            if (length < NodeProtocol.HEADER_SIZE - 4
+                    || length > NodeProtocol.HEADER_SIZE - 4 + NodeProtocol.MAX_PAYLOAD_SIZE) {
+                throw new IOException("Invalid frame length " + length + ".");
+            }
+            if (this.in.remaining() < 4 + length) {
+                break;
+            }
+            final var id = this.in.getLong(start + 5);
+            final var request = this.pending.remove(id);
+            if (request != null) {
+                request.complete(this.in.slice(start + NodeProtocol.HEADER_SIZE,
+                        length + 4 - NodeProtocol.HEADER_SIZE));
+            }
+            this.in.position(start + 4 + length);
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!this.closed) {
+                this.flush();
+                if (this.selector.select() > 0 && this.key.isReadable()) {
+                    this.receive();
+                }
+                this.selector.selectedKeys().clear();
+            }
+        } catch (IOException | RuntimeException error) {
+            if (!this.closed) {
+                System.err.println("Warning: Connection to cluster node lost.");
+            }
+        }
+        this.close();
+    }
+
+    /**
+     * Closes the connection and fails all pending requests.
+     */
+    @Override
+    public void close() {
+        outLock.lock();
+        try {
+            this.closed = true;
+            isThereSpace.signalAll();
+        } finally {
+            outLock.unlock();
+        }
+        try {
+            this.channel.close();
+            this.selector.close();
+        } catch (IOException error) {
+            // There is nothing left to do with a broken connection.
+        }
+        final var error = new IOException("Connection closed.");
+        this.pending.values().forEach(request -> request.future.completeExceptionally(error));
+        this.pending.clear();
+    }
+}
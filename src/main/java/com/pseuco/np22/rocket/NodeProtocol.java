@@ -0,0 +1,251 @@
+package com.pseuco.np22.rocket;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * <p>
+ * The binary protocol spoken between the nodes of a cluster.
+ * </p>
+ *
+ * <p>
+ * Every message is a frame consisting of its length as integer, the type of the message,
+ * a request id and the payload. The length does not include the length field itself. A
+ * response carries the type and the id of its request, such that a node may send many
+ * requests without waiting for their responses. Requests on a connection are answered in
+ * order.
+ * </p>
+ *
+ * <p>
+ * Like the {@link Command} messages within a node, every frame type corresponds to a single
+ * operation on the receiving node:
+ * </p>
+ *
+ * <ul>
+ * <li>{@link #HELLO} introduces a node by its id, the response carries the lease time.</li>
+ * <li>{@link #ALLOCATE} allocates up to the given number of tickets, the response carries
+ * the number of allocated tickets followed by their ids.</li>
+ * <li>{@link #DEALLOCATE} returns the given number of ticket ids.</li>
+ * <li>{@link #SELL} confirms the sale of the given number of ticket ids at once, the
+ * response carries {@code 1} if all sales are valid and {@code 0} if none is made.</li>
+ * <li>{@link #AVAILABLE} asks for the number of available tickets.</li>
+ * <li>{@link #RENEW} renews the lease of the node.</li>
+ * <li>{@link #REGISTER} announces a {@link NodeInfo} of the node, the response carries the
+ * registry of all nodes.</li>
+ * <li>{@link #GOSSIP} carries an availability digest, the response carries the digest of
+ * the receiving node.</li>
+ * </ul>
+ */
+public final class NodeProtocol {
+    /**
+     * Introduces a node by its id.
+     */
+    public static final byte HELLO = 1;
+    /**
+     * Allocates tickets for a node.
+     */
+    public static final byte ALLOCATE = 2;
+    /**
+     * Returns tickets of a node.
+     */
+    public static final byte DEALLOCATE = 3;
+    /**
+     * Confirms the sale of tickets.
+     */
+    public static final byte SELL = 4;
+    /**
+     * Asks for the number of available tickets.
+     */
+    public static final byte AVAILABLE = 5;
+    /**
+     * Renews the lease of a node.
+     */
+    public static final byte RENEW = 6;
+    /**
+     * Announces a node to the registry of the cluster.
+     */
+    public static final byte REGISTER = 7;
+    /**
+     * Exchanges availability digests.
+     */
+    public static final byte GOSSIP = 8;
+
+    /**
+     * The size of the frame header, i.e., length, type and request id.
+     */
+    public static final int HEADER_SIZE = 4 + 1 + 8;
+
+    /**
+     * The maximal size of a payload.
+     */
+    public static final int MAX_PAYLOAD_SIZE = 64 * 1024;
+
+    /**
+     * The maximal number of ticket ids in a single frame.
+     */
+    public static final int MAX_TICKETS = (MAX_PAYLOAD_SIZE - 4) / 4;
+
+    /**
+     * The size of the buffers of a connection, large enough to batch many frames.
+     */
+    public static final int BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * The protocol only consists of constants and static helpers.
+     */
+    private NodeProtocol() {
+    }
+
+    /**
+     * The entry of a node in the registry of the cluster.
+     */
+    public static class NodeInfo {
+        /**
+         * The id of the node.
+         */
+        private final UUID id;
+        /**
+         * The address other nodes reach this node at, {@code null} or with port {@code 0}
+         * if the node does not accept connections.
+         */
+        private final InetSocketAddress address;
+        /**
+         * The number of active servers of the node.
+         */
+        private final int numServers;
+
+        /**
+         * Constructs a new {@link NodeInfo}.
+         *
+         * @param id         The id of the node.
+         * @param address    The address other nodes reach the node at.
+         * @param numServers The number of active servers of the node.
+         */
+        public NodeInfo(final UUID id, final InetSocketAddress address, final int numServers) {
+            this.id = id;
+            this.address = address;
+            this.numServers = numServers;
+        }
+
+        /**
+         * Returns the id of the node.
+         *
+         * @return The id of the node.
+         */
+        public UUID getId() {
+            return this.id;
+        }
+
+        /**
+         * Returns the address other nodes reach the node at.
+         *
+         * @return The address, {@code null} or with port {@code 0} if the node does not
+         *         accept connections.
+         */
+        public InetSocketAddress getAddress() {
+            return this.address;
+        }
+
+        /**
+         * Returns the number of active servers of the node.
+         *
+         * @return The number of active servers of the node.
+         */
+        public int getNumServers() {
+            return this.numServers;
+        }
+
+        /**
+         * Writes the entry to the given buffer.
+         *
+         * @param buffer The buffer to write to.
+         */
+        public void encode(final ByteBuffer buffer) {
+            putUUID(buffer, this.id);
+            final var host = this.address == null ? new byte[0]
+                    : this.address.getHostString().getBytes(StandardCharsets.UTF_8);
+            buffer.putShort((short) host.length);
+            buffer.put(host);
+            buffer.putInt(this.address == null ? 0 : this.address.getPort());
+            buffer.putInt(this.numServers);
+        }
+
+        /**
+         * Reads an entry from the given buffer.
+         *
+         * @param buffer The buffer to read from.
+         * @return The entry.
+         */
+        public static NodeInfo decode(final ByteBuffer buffer) {
+            final var id = getUUID(buffer);
+            final var host = new byte[buffer.getShort()];
+            buffer.get(host);
+            final var port = buffer.getInt();
+            final var address = InetSocketAddress.createUnresolved(new String(host, StandardCharsets.UTF_8), port);
+            return new NodeInfo(id, address, buffer.getInt());
+        }
+    }
+
+    /**
+     * Writes a node id to the given buffer.
+     *
+     * @param buffer The buffer to write to.
+     * @param id     The id of the node.
+     */
+    public static void putUUID(final ByteBuffer buffer, final UUID id) {
+        buffer.putLong(id.getMostSignificantBits());
+        buffer.putLong(id.getLeastSignificantBits());
+    }
+
+    /**
+     * Reads a node id from the given buffer.
+     *
+     * @param buffer The buffer to read from.
+     * @return The id of the node.
+     */
+    public static UUID getUUID(final ByteBuffer buffer) {
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    /**
+     * <p>
+     * Writes an availability digest to the given buffer.
+     * </p>
+     *
+     * <p>
+     * A digest maps the id of every known node to the number of tickets the node made
+     * available and the number of tickets it took, in this order.
+     * </p>
+     *
+     * @param buffer The buffer to write to.
+     * @param digest The digest.
+     */
+    public static void putDigest(final ByteBuffer buffer, final Map<UUID, long[]> digest) {
+        buffer.putInt(digest.size());
+        digest.forEach((node, counts) -> {
+            putUUID(buffer, node);
+            buffer.putLong(counts[0]);
+            buffer.putLong(counts[1]);
+        });
+    }
+
+    /**
+     * Reads an availability digest from the given buffer.
+     *
+     * @param buffer The buffer to read from.
+     * @return The digest.
+     */
+    public static Map<UUID, long[]> getDigest(final ByteBuffer buffer) {
+        final var size = buffer.getInt();
+        final Map<UUID, long[]> digest = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            final var node = getUUID(buffer);
+            digest.put(node, new long[] { buffer.getLong(), buffer.getLong() });
+        }
+        return digest;
+    }
+}
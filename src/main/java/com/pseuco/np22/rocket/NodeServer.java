@@ -0,0 +1,269 @@
+package com.pseuco.np22.rocket;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * <p>
+ * Accepts connections of other nodes and answers their {@link NodeProtocol} requests.
+ * </p>
+ *
+ * <p>
+ * All connections are served by a single thread with a {@link Selector}. Every connection
+ * owns a direct buffer for incoming and one for outgoing frames which are reused for its
+ * whole lifetime. The {@link Handler} reads a request directly from the incoming buffer
+ * and writes its response directly to the outgoing buffer. All responses to the requests
+ * received at once are written back with a single write.
+ * </p>
+ */
+public class NodeServer implements Runnable {
+    /**
+     * Handles the requests of the connected nodes.
+     */
+    public interface Handler {
+        /**
+         * Handles a request and writes the payload of the response.
+         *
+         * <p>
+         * The handler must not block and must not write more than
+         * {@link NodeProtocol#MAX_PAYLOAD_SIZE} bytes. Throwing an exception closes the
+         * connection.
+         * </p>
+         *
+         * @param session  The session of the connection.
+         * @param type     The type of the request.
+         * @param request  The payload of the request.
+         * @param response The buffer for the payload of the response.
+         */
+        void handle(Session session, byte type, ByteBuffer request, ByteBuffer response);
+    }
+
+    /**
+     * The state a {@link Handler} keeps for a connection, e.g., the id of the node.
+     */
+    public static class Session {
+        /**
+         * The state of the handler, {@code null} for a new connection.
+         */
+        private Object attachment = null;
+
+        /**
+         * Returns the state of the handler.
+         *
+         * @return The state of the handler, {@code null} for a new connection.
+         */
+        public Object getAttachment() {
+            return this.attachment;
+        }
+
+        /**
+         * Sets the state of the handler.
+         *
+         * @param attachment The state of the handler.
+         */
+        public void setAttachment(final Object attachment) {
+            this.attachment = attachment;
+        }
+    }
+
+    /**
+     * A connection to another node.
+     */
+    private static class Connection {
+        /**
+         * The channel of the connection.
+         */
+        private final SocketChannel channel;
+        /**
+         * The requests which have not been processed yet.
+         */
+        private final ByteBuffer in = ByteBuffer.allocateDirect(NodeProtocol.BUFFER_SIZE);
+        /**
+         * The responses which have not been written yet.
+         */
+        private final ByteBuffer out = ByteBuffer.allocateDirect(NodeProtocol.BUFFER_SIZE);
+        /**
+         * The state the handler keeps for the connection.
+         */
+        private final Session session = new Session();
+
+        /**
+         * Constructs a new {@link Connection}.
+         */
+        private Connection(final SocketChannel channel) {
+            this.channel = channel;
+            // The incoming buffer is kept in read mode between reads.
+            this.in.flip();
+        }
+    }
+
+    /**
+     * The channel accepting new connections.
+     */
+    private final ServerSocketChannel serverChannel;
+
+    /**
+     * The selector of all channels.
+     */
+    private final Selector selector;
+
+    /**
+     * The handler of the requests.
+     */
+    private final Handler handler;
+
+    /**
+     * Constructs a new {@link NodeServer} and binds it to the given address.
+     *
+     * @param address The address to listen on.
+     * @param handler The handler of the requests.
+     * @throws IOException When the address cannot be bound.
+     */
+    public NodeServer(final InetSocketAddress address, final Handler handler) throws IOException {
+        this.handler = handler;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(address);
+        this.serverChannel.configureBlocking(false);
+        this.serverChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return The port the server listens on.
+     */
+    public int getPort() {
+        return this.serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Accepts a new connection.
+     */
+    private void accept() throws IOException {
+        final var channel = this.serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.register(this.selector, SelectionKey.OP_READ, new Connection(channel));
+    }
+
+    /**
+     * Processes the complete frames in the incoming buffer.
+     *
+     * @return Whether all complete frames have been processed, otherwise the outgoing buffer
+     *         is full.
+     */
+    private boolean process(final Connection connection) throws IOException {
+        final var in = connection.in;
+        final var out = connection.out;
+        while (in.remaining() >= 4) {
+            final var start = in.position();
+            final var length = in.getInt(start);
+            if (length < NodeProtocol.HEADER_SIZE - 4
+                    || length > NodeProtocol.HEADER_SIZE - 4 + NodeProtocol.MAX_PAYLOAD_SIZE) {
+                throw new IOException("Invalid frame length " + length + ".");
+            }
+            if (in.remaining() < 4 + length) {
+                // Wait for the rest of the frame.
+                break;
+            }
+            if (out.remaining() < NodeProtocol.HEADER_SIZE + NodeProtocol.MAX_PAYLOAD_SIZE) {
+                // Wait until the responses have been written.
+                return false;
+            }
+            final var type = in.get(start + 4);
+            final var id = in.getLong(start + 5);
+            final var request = in.slice(start + NodeProtocol.HEADER_SIZE, length + 4 - NodeProtocol.HEADER_SIZE);
+            final var responseStart = out.position();
+            out.putInt(0).put(type).putLong(id);
+            this.handler.handle(connection.session, type, request, out);
+            out.putInt(responseStart, out.position() - responseStart - 4);
+            in.position(start + 4 + length);
+        }
+        return true;
+    }
+
+    /**
+     * Writes as much of the outgoing buffer as possible.
+     *
+     * @return Whether the outgoing buffer is empty.
+     */
+    private boolean flush(final Connection connection) throws IOException {
+        final var out = connection.out;
+        out.flip();
+        connection.channel.write(out);
+        out.compact();
+        return out.position() == 0;
+    }
+
+    /**
+     * Serves a connection which is ready for reading or writing.
+     */
+    private void serve(final SelectionKey key) throws IOException {
+        final var connection = (Connection) key.attachment();
+        if (key.isReadable()) {
+            connection.in.compact();
+            final var read = connection.channel.read(connection.in);
+            connection.in.flip();
+            if (read < 0) {
+                throw new IOException("Connection closed by node.");
+            }
+        }
+        // Batch the responses of all frames received so far.
+        var isProcessed = this.process(connection);
+        var isFlushed = this.flush(connection);
+        if (!isProcessed && isFlushed) {
+            isProcessed = this.process(connection);
+            isFlushed = this.flush(connection);
+        }
+        // Stop reading while responses are pending, the node has to wait for them anyway.
+        key.interestOps(isProcessed ? SelectionKey.OP_READ | (isFlushed ? 0 : SelectionKey.OP_WRITE)
+                : SelectionKey.OP_WRITE);
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                this.selector.select();
+            } catch (IOException error) {
+                System.err.println("Unable to run the node server!");
+                error.printStackTrace();
+                return;
+            }
+            final var keys = this.selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                final var key = keys.next();
+                keys.remove();
+                if (key.isAcceptable()) {
+                    try {
+                        this.accept();
+                    } catch (IOException error) {
+                        System.err.println("Warning: Unable to accept a cluster node.");
+                    }
+                    continue;
+                }
+                try {
+                    this.serve(key);
+                } catch (IOException | RuntimeException error) {
+                    // The node disconnected or sent garbage, drop the connection.
+                    System.err.println("Warning: Connection to cluster node lost.");
+                    key.cancel();
+                    try {
+                        key.channel().close();
+                    } catch (IOException closeError) {
+                        // There is nothing left to do with a broken connection.
+                    }
+                }
+            }
+        }
+    }
+}
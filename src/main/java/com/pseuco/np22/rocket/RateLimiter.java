@@ -0,0 +1,153 @@
+package com.pseuco.np22.rocket;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.pseuco.np22.request.CustomerId;
+
+/**
+ * <p>
+ * Limits the rate of requests every customer may send to the servers, such that a few
+ * aggressive clients cannot flood the mailboxes of the servers.
+ * </p>
+ *
+ * <p>
+ * Every customer has a token bucket with the configured rate and burst. The bucket is
+ * represented by a single timestamp, the time at which the bucket would be full again
+ * (generic cell rate algorithm). A request takes a token by advancing the timestamp by
+ * one interval with a compare-and-set, so threads of the load balancer never block each
+ * other, and it is rejected if the timestamp would move more than the burst ahead.
+ * </p>
+ *
+ * <p>
+ * A bucket whose timestamp has passed is full and therefore indistinguishable from a
+ * missing one, so such buckets are evicted and the table only holds the customers which
+ * have been active recently. Instead of scanning the whole table at once, every request
+ * advances a shared cursor over the table by a few buckets, which bounds the work of a
+ * single request while the scan still keeps up with the buckets added by the requests.
+ * </p>
+ */
+public class RateLimiter {
+    /**
+     * The minimal time between the starts of two scans for full buckets in nanoseconds.
+     */
+    private static final long EVICTION_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * The number of buckets a request checks for eviction.
+     */
+    private static final int EVICTION_BATCH = 8;
+
+    /**
+     * The time in nanoseconds it takes to refill one token, {@code 0} if the limiter is
+     * disabled.
+     */
+    private final long interval;
+
+    /**
+     * The time in nanoseconds the buckets may be ahead of the current time, i.e., the burst
+     * in time.
+     */
+    private final long capacity;
+
+    /**
+     * The time at which the bucket of a customer is full again by customer.
+     */
+    private final ConcurrentHashMap<CustomerId, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * Lock protecting the eviction cursor, held by at most one request at a time.
+     */
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    /**
+     * The position of the current scan for full buckets.
+     */
+    private Iterator<AtomicLong> evictionCursor = Collections.emptyIterator();
+
+    /**
+     * The time at which the current scan for full buckets started.
+     */
+    private long evictionStart = System.nanoTime();
+
+    /**
+     * Constructs a new {@link RateLimiter}.
+     *
+     * @param coordinator The {@link Coordinator} of the ticket sales system.
+     */
+    public RateLimiter(final Coordinator coordinator) {
+        final var config = coordinator.getConfig();
+        this.interval = config.getCustomerRate() > 0 ? TimeUnit.SECONDS.toNanos(1) / config.getCustomerRate() : 0;
+        this.capacity = this.interval * Math.max(1, config.getCustomerBurst());
+    }
+
+    /**
+     * Indicates whether the rate of customers is limited.
+     *
+     * @return Whether the limiter is enabled.
+     */
+    public boolean isEnabled() {
+        return this.interval > 0;
+    }
+
+    /**
+     * Takes a token from the bucket of a customer.
+     *
+     * @param customer The customer.
+     * @return Whether the customer may send the request.
+     */
+    public boolean tryAcquire(final CustomerId customer) {
+        final var now = System.nanoTime();
+        this.evict(now);
+        var bucket = this.buckets.get(customer);
+        if (bucket == null) {
+            bucket = this.buckets.putIfAbsent(customer, new AtomicLong(now + this.interval));
+            if (bucket == null) {
+                return true;
+            }
+        }
+        while (true) {
+            final var full = bucket.get();
+            final var next = (full - now > 0 ? full : now) + this.interval;
+            if (next - now > this.capacity) {
+                return false;
+            }
+            if (bucket.compareAndSet(full, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Checks the next few buckets of the current scan and removes the full ones, starting a
+     * new scan if the last one is done and long enough ago. Only one thread evicts at a
+     * time, the other threads go on right away.
+     */
+    private void evict(final long now) {
+        if (!this.evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            if (!this.evictionCursor.hasNext()) {
+                if (now - this.evictionStart < EVICTION_INTERVAL) {
+                    return;
+                }
+                this.evictionStart = now;
+                this.evictionCursor = this.buckets.values().iterator();
+            }
+            // A token taken concurrently from a bucket which is removed is lost, which only
+            // favors the customer.
+            for (var checked = 0; checked < EVICTION_BATCH && this.evictionCursor.hasNext(); checked++) {
+                if (this.evictionCursor.next().get() - now <= 0) {
+                    this.evictionCursor.remove();
+                }
+            }
+        } finally {
+            this.evictionLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package com.pseuco.np22.rocket;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+/**
+ * <p>
+ * A {@link Database} leasing its tickets from the {@link TicketAuthority} of the cluster.
+ * </p>
+ *
+ * <p>
+ * Allocations, deallocations and sales are forwarded to the authority. Requests of
+ * different servers are pipelined over a single {@link NodeClient}, i.e., a server does
+ * not wait for the requests of other servers. A background thread renews the lease of this
+ * node and registers it with the authority, such that the authority only reclaims our
+ * tickets if this node crashed or is cut off.
+ * </p>
+ *
+ * <p>
+ * As the lease is kept alive, tickets we fail to return would stay with this node forever.
+ * Returns which do not reach the authority and tickets of allocations answered too late
+ * are therefore queued and returned again by the background thread. The authority ignores
+ * the ids it does not hold for us anymore, so returning a ticket twice is harmless.
+ * </p>
+ */
+public class RemoteDatabase extends Database {
+    /**
+     * The id of this node.
+     */
+    private final UUID node;
+
+    /**
+     * Counts the tickets entering and leaving this node.
+     */
+    private final Gossip gossip;
+
+    /**
+     * The address of the authority.
+     */
+    private final InetSocketAddress authority;
+
+    /**
+     * The number of active servers of this node.
+     */
+    private final IntSupplier numServers;
+
+    /**
+     * Lock protecting the connection.
+     */
+    private final ReentrantLock connectionLock = new ReentrantLock();
+
+    /**
+     * The connection to the authority, {@code null} if disconnected.
+     */
+    private NodeClient client = null;
+
+    /**
+     * The ids of tickets which still have to be returned to the authority.
+     */
+    private final ConcurrentLinkedQueue<Integer> unreturned = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Indicates whether this node left the cluster.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * The lease time announced by the authority in milliseconds.
+     */
+    private volatile int leaseTime;
+
+    /**
+     * The registry of the cluster as of the last registration.
+     */
+    private volatile List<NodeProtocol.NodeInfo> registry = List.of();
+
+    /**
+     * Constructs a new {@link RemoteDatabase} and connects to the authority.
+     *
+     * @param coordinator The {@link Coordinator} of the ticket sales system.
+     * @throws IOException When the authority cannot be reached.
+     */
+    public RemoteDatabase(final Coordinator coordinator) throws IOException {
+        this(coordinator.getConfig().getAuthorityAddress(), coordinator.getGossip(), coordinator::getNumOfServers);
+    }
+
+    /**
+     * Constructs a new {@link RemoteDatabase} and connects to the authority.
+     *
+     * @param authority  The address of the authority.
+     * @param gossip     The gossip of this node, which learns the registry from us.
+     * @param numServers The number of active servers of this node, announced in the
+     *                   registry.
+     * @throws IOException When the authority cannot be reached.
+     */
+    public RemoteDatabase(final InetSocketAddress authority, final Gossip gossip, final IntSupplier numServers)
+            throws IOException {
+        super();
+        this.authority = authority;
+        this.node = gossip.getNode();
+        this.gossip = gossip;
+        this.numServers = numServers;
+        gossip.setRegistry(this::getRegistry);
+        connectionLock.lock();
+        try {
+            this.connect();
+        } finally {
+            connectionLock.unlock();
+        }
+        // Renew the lease well before it expires.
+        final var renewer = new Thread(() -> {
+            while (!this.closed) {
+                try {
+                    Thread.sleep(Math.max(this.leaseTime / 3, 1));
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                    return;
+                }
+                this.register();
+                this.returnUnreturned();
+            }
+        });
+        renewer.setDaemon(true);
+        renewer.start();
+    }
+
+    /**
+     * Returns the id of this node.
+     *
+     * @return The id of this node.
+     */
+    public UUID getNode() {
+        return this.node;
+    }
+
+    /**
+     * Returns the registry of the cluster as of the last registration.
+     *
+     * @return The nodes with a living lease including this node.
+     */
+    public List<NodeProtocol.NodeInfo> getRegistry() {
+        return this.registry;
+    }
+
+    /**
+     * Connects and says hello to the authority, the caller must hold the connection lock.
+     */
+    private NodeClient connect() throws IOException {
+        final var client = new NodeClient(this.authority);
+        final var hello = client.call(NodeProtocol.HELLO, buffer -> NodeProtocol.putUUID(buffer, this.node),
+                buffer -> buffer.getInt());
+        try {
+            this.leaseTime = hello.get();
+        } catch (InterruptedException | ExecutionException error) {
+            client.close();
+            throw new IOException("Unable to say hello to the ticket authority.", error);
+        }
+        this.client = client;
+        return client;
+    }
+
+    /**
+     * Returns the connection to the authority, reconnecting if it has been lost.
+     *
+     * @return The connection or {@code null} if the authority cannot be reached.
+     */
+    private NodeClient client() {
+        connectionLock.lock();
+        try {
+            if (this.closed) {
+                return null;
+            }
+            if (this.client != null && !this.client.isClosed()) {
+                return this.client;
+            }
+            // Our lease survives if we are back in time.
+            return this.connect();
+        } catch (IOException error) {
+            System.err.println("Warning: Unable to reach the ticket authority.");
+            this.client = null;
+            return null;
+        } finally {
+            connectionLock.unlock();
+        }
+    }
+
+    /**
+     * Sends a request to the authority and waits for its response.
+     *
+     * @return The decoded response or {@code fallback} if the authority cannot be reached.
+     */
+    private <T> T call(final byte type, final NodeClient.Encoder encoder, final NodeClient.Decoder<T> decoder,
+            final T fallback) {
+        return this.call(type, encoder, decoder, fallback, null);
+    }
+
+    /**
+     * Sends a request to the authority and waits for its response, handing a response which
+     * arrives after we gave up to {@code onLate}. The callback runs on the thread of the
+     * connection, so it must not block.
+     *
+     * @return The decoded response or {@code fallback} if the authority cannot be reached.
+     */
+    private <T> T call(final byte type, final NodeClient.Encoder encoder, final NodeClient.Decoder<T> decoder,
+            final T fallback, final Consumer<T> onLate) {
+        final var client = this.client();
+        if (client == null) {
+            return fallback;
+        }
+        final CompletableFuture<T> response = client.call(type, encoder, decoder);
+        try {
+            return response.get(Math.max(this.leaseTime, 1), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException | ExecutionException | TimeoutException error) {
+            System.err.println("Warning: Unable to reach the ticket authority.");
+            if (onLate != null) {
+                response.thenAccept(onLate);
+            }
+            return fallback;
+        }
+    }
+
+    /**
+     * Renews the lease and updates the registry.
+     */
+    public void register() {
+        final var info = this.gossip.getInfo(this.numServers.getAsInt());
+        final var registry = this.call(NodeProtocol.REGISTER, info::encode, buffer -> {
+            final var count = buffer.getInt();
+            final List<NodeProtocol.NodeInfo> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                entries.add(NodeProtocol.NodeInfo.decode(buffer));
+            }
+            return entries;
+        }, null);
+        if (registry != null) {
+            this.registry = registry;
+        }
+    }
+
+    @Override
+    public int getNumAvailable() {
+        return this.call(NodeProtocol.AVAILABLE, buffer -> {
+        }, buffer -> buffer.getInt(), 0);
+    }
+
+    @Override
+    public List<Ticket> allocate(final int numTickets) {
+        final List<Ticket> tickets = this.call(NodeProtocol.ALLOCATE,
+                buffer -> buffer.putInt(Math.min(numTickets, NodeProtocol.MAX_TICKETS)),
+                buffer -> {
+                    final var count = buffer.getInt();
+                    final List<Ticket> allocatedTickets = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        allocatedTickets.add(new Ticket(buffer.getInt()));
+                    }
+                    return allocatedTickets;
+                }, new ArrayList<>(),
+                // The authority leased the tickets to us nonetheless, they were never counted.
+                late -> late.forEach(ticket -> this.unreturned.add(ticket.getId())));
+        this.gossip.countAvailable(tickets.size());
+        return tickets;
+    }
+
+    @Override
+    public void deallocate(final Iterable<Ticket> tickets) {
+        final List<Integer> ids = new ArrayList<>();
+        tickets.forEach(ticket -> ids.add(ticket.getId()));
+        if (ids.isEmpty()) {
+            return;
+        }
+        this.gossip.countTaken(ids.size());
+        this.returnIds(ids);
+    }
+
+    /**
+     * Returns the tickets queued by failed returns and late allocations.
+     */
+    private void returnUnreturned() {
+        final List<Integer> ids = new ArrayList<>();
+        Integer id;
+        while ((id = this.unreturned.poll()) != null) {
+            ids.add(id);
+        }
+        if (!ids.isEmpty()) {
+            this.returnIds(ids);
+        }
+    }
+
+    /**
+     * Returns tickets to the authority, queueing them to be returned again if the authority
+     * cannot be reached.
+     */
+    private void returnIds(final List<Integer> ids) {
+        // Split large returns into several frames, they are pipelined nonetheless.
+        final List<CompletableFuture<Void>> responses = new ArrayList<>();
+        final var client = this.client();
+        if (client == null) {
+            this.unreturned.addAll(ids);
+            return;
+        }
+        for (int start = 0; start < ids.size(); start += NodeProtocol.MAX_TICKETS) {
+            final var batch = ids.subList(start, Math.min(ids.size(), start + NodeProtocol.MAX_TICKETS));
+            responses.add(client.call(NodeProtocol.DEALLOCATE, buffer -> {
+                buffer.putInt(batch.size());
+                batch.forEach(buffer::putInt);
+            }, buffer -> null));
+        }
+        try {
+            CompletableFuture.allOf(responses.toArray(CompletableFuture[]::new)).get(Math.max(this.leaseTime, 1),
+                    TimeUnit.MILLISECONDS);
+        } catch (InterruptedException | ExecutionException | TimeoutException error) {
+            System.err.println("Warning: Unable to reach the ticket authority.");
+            // We do not know which returns arrived, the others are returned again later.
+            this.unreturned.addAll(ids);
+        }
+    }
+
+    @Override
+    public boolean confirmSale(final int ticketId) {
+        return this.confirmSales(List.of(ticketId));
+    }
+
+    @Override
+    public boolean confirmSales(final List<Integer> ticketIds) {
+        // A group is confirmed with a single request, which the authority answers all or nothing.
+        return this.call(NodeProtocol.SELL, buffer -> {
+            buffer.putInt(ticketIds.size());
+            ticketIds.forEach(buffer::putInt);
+        }, buffer -> buffer.get() == 1, false);
+    }
+
+    /**
+     * Leaves the cluster without returning the tickets, they are reclaimed by the authority
+     * once our lease expires.
+     */
+    public void close() {
+        connectionLock.lock();
+        try {
+            this.closed = true;
+            if (this.client != null) {
+                this.client.close();
+            }
+        } finally {
+            connectionLock.unlock();
+        }
+    }
+}
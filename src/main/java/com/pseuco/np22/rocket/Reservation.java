@@ -10,21 +10,39 @@ public class Reservation {
     private final Ticket ticket;
 
     /**
-     * The system time at which the ticket has been reserved.
-     * 
-     * This is necessary for determining when a reservation's timeout has expired.
+     * The system time in milliseconds at which the reservation expires.
+     */
+    private long expiresAt;
+
+    /**
+     * The number of times the reservation has been extended.
      */
-    private final long reservedAt;
+    private int numExtensions = 0;
 
     /**
      * Constructs a new reservation.
      * 
-     * @param ticket The ticket that should be reserved.
+     * @param ticket  The ticket that should be reserved.
+     * @param timeout The time in milliseconds after which the reservation expires.
      */
-    public Reservation(final Ticket ticket) {
+    public Reservation(final Ticket ticket, final long timeout) {
         ticket.reserve();
         this.ticket = ticket;
-        this.reservedAt = System.currentTimeMillis();
+        this.expiresAt = System.currentTimeMillis() + timeout;
+    }
+
+    /**
+     * Constructs a reservation expiring at the given time, e.g., when it is recovered from
+     * the {@link Journal}.
+     * 
+     * @param ticket    The ticket that should be reserved.
+     * @param expiresAt The system time in milliseconds at which the reservation expires.
+     * @return The reservation.
+     */
+    public static Reservation until(final Ticket ticket, final long expiresAt) {
+        final var reservation = new Reservation(ticket, 0);
+        reservation.expiresAt = expiresAt;
+        return reservation;
     }
 
     /**
@@ -37,12 +55,41 @@ public class Reservation {
     }
 
     /**
-     * Returns the age of the reservation in seconds.
+     * Returns the system time at which the reservation expires.
+     * 
+     * @return The system time in milliseconds at which the reservation expires.
+     */
+    public long getExpiresAt() {
+        return this.expiresAt;
+    }
+
+    /**
+     * Checks whether the reservation has expired.
+     * 
+     * @param now The current system time in milliseconds.
+     * @return Whether the reservation has expired.
+     */
+    public boolean isExpired(final long now) {
+        return now > this.expiresAt;
+    }
+
+    /**
+     * Returns the number of times the reservation has been extended.
+     * 
+     * @return The number of extensions.
+     */
+    public int getNumExtensions() {
+        return this.numExtensions;
+    }
+
+    /**
+     * Extends the reservation such that it expires the given time from now at the earliest.
      * 
-     * @return The age of the reservation in seconds.
+     * @param timeout The time in milliseconds after which the reservation expires now.
      */
-    public long getAge() {
-        return (System.currentTimeMillis() - this.reservedAt) / 1000;
+    public void extend(final long timeout) {
+        this.expiresAt = Math.max(this.expiresAt, System.currentTimeMillis() + timeout);
+        this.numExtensions++;
     }
 
     /**
@@ -0,0 +1,268 @@
+package com.pseuco.np22.rocket;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * <p>
+ * A bounded ring of preallocated entries shared by many producers and a single consumer.
+ * </p>
+ *
+ * <p>
+ * Entries are addressed by ever increasing sequence numbers, the entry of a sequence is
+ * the slot at the sequence modulo the capacity, which is a power of two. A producer claims
+ * the next sequence with a compare-and-set on the claim cursor, fills the entry, and
+ * publishes the sequence. The consumer processes the published sequences in order and
+ * releases them in batches, such that producers may reuse their entries. Hence, neither
+ * side takes a lock and no memory is allocated per message.
+ * </p>
+ */
+public class RingBuffer<E> {
+    /**
+     * Decides how the consumer waits for new entries.
+     */
+    public static abstract class WaitStrategy {
+        /**
+         * Waits until the given condition holds.
+         *
+         * @param ready The condition to wait for.
+         * @throws InterruptedException The thread has been interrupted.
+         */
+        public abstract void await(BooleanSupplier ready) throws InterruptedException;
+
+        /**
+         * Wakes up the consumer after the condition might have changed.
+         */
+        public void signal() {
+        }
+
+        /**
+         * Creates a wait strategy by its name.
+         *
+         * @param name Either {@code spin}, {@code yield} or {@code park}.
+         * @return The wait strategy.
+         */
+        public static WaitStrategy of(final String name) {
+            switch (name) {
+                case "spin":
+                    return new BusySpin();
+                case "yield":
+                    return new Yield();
+                case "park":
+                    return new Park();
+                default:
+                    throw new IllegalArgumentException("Unknown wait strategy " + name + "!");
+            }
+        }
+    }
+
+    /**
+     * Burns a core while waiting, for the lowest latency.
+     */
+    public static class BusySpin extends WaitStrategy {
+        @Override
+        public void await(final BooleanSupplier ready) throws InterruptedException {
+            while (!ready.getAsBoolean()) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * Gives up the core to other threads while waiting.
+     */
+    public static class Yield extends WaitStrategy {
+        @Override
+        public void await(final BooleanSupplier ready) throws InterruptedException {
+            while (!ready.getAsBoolean()) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Parks the consumer until a producer wakes it up, costs no CPU while idle.
+     */
+    public static class Park extends WaitStrategy {
+        /**
+         * The parked consumer, {@code null} if the consumer is running.
+         */
+        private volatile Thread waiter;
+
+        @Override
+        public void await(final BooleanSupplier ready) throws InterruptedException {
+            // Register before checking the condition again, such that a producer changing the
+            // condition afterwards sees the waiter and wakes it up.
+            this.waiter = Thread.currentThread();
+            try {
+                while (!ready.getAsBoolean()) {
+                    LockSupport.park(this);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                }
+            } finally {
+                this.waiter = null;
+            }
+        }
+
+        @Override
+        public void signal() {
+            final var waiter = this.waiter;
+            if (waiter != null) {
+                LockSupport.unpark(waiter);
+            }
+        }
+    }
+
+    /**
+     * The preallocated entries.
+     */
+    private final Object[] entries;
+
+    /**
+     * The mask mapping a sequence to its slot.
+     */
+    private final int mask;
+
+    /**
+     * The sequence published in each slot, such that the consumer can tell whether the
+     * entry of a sequence is ready.
+     */
+    private final AtomicLongArray published;
+
+    /**
+     * The last sequence claimed by a producer.
+     */
+    private final AtomicLong claimed = new AtomicLong(-1);
+
+    /**
+     * The last sequence released by the consumer.
+     */
+    private final AtomicLong released = new AtomicLong(-1);
+
+    /**
+     * Constructs a new {@link RingBuffer}.
+     *
+     * @param capacity The minimal number of entries, rounded up to a power of two.
+     * @param factory  Creates the entries.
+     */
+    public RingBuffer(final int capacity, final Supplier<E> factory) {
+        final var size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.entries = new Object[size];
+        this.mask = size - 1;
+        this.published = new AtomicLongArray(size);
+        for (int slot = 0; slot < size; slot++) {
+            this.entries[slot] = factory.get();
+            this.published.set(slot, -1);
+        }
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return The capacity of the ring.
+     */
+    public int getCapacity() {
+        return this.entries.length;
+    }
+
+    /**
+     * Returns the last sequence claimed by a producer.
+     *
+     * @return The last claimed sequence, {@code -1} if there is none.
+     */
+    public long getClaimed() {
+        return this.claimed.get();
+    }
+
+    /**
+     * Returns the last sequence released by the consumer.
+     *
+     * @return The last released sequence, {@code -1} if there is none.
+     */
+    public long getReleased() {
+        return this.released.get();
+    }
+
+    /**
+     * Tries to claim the next sequence for a producer.
+     *
+     * @return The claimed sequence or {@code -1} if the ring is full.
+     */
+    public long tryClaim() {
+        while (true) {
+            final var last = this.claimed.get();
+            if (last + 1 - this.released.get() > this.entries.length) {
+                return -1;
+            }
+            if (this.claimed.compareAndSet(last, last + 1)) {
+                return last + 1;
+            }
+        }
+    }
+
+    /**
+     * Returns the entry of a sequence.
+     *
+     * @param sequence The sequence.
+     * @return The entry to fill by the producer or to read by the consumer.
+     */
+    @SuppressWarnings("unchecked")
+    public E get(final long sequence) {
+        return (E) this.entries[(int) sequence & this.mask];
+    }
+
+    /**
+     * Publishes a claimed sequence after its entry has been filled.
+     *
+     * @param sequence The sequence.
+     */
+    public void publish(final long sequence) {
+        this.published.set((int) sequence & this.mask, sequence);
+    }
+
+    /**
+     * Checks whether the entry of a sequence has been published.
+     *
+     * @param sequence The sequence.
+     * @return Whether the entry is ready for the consumer.
+     */
+    public boolean isPublished(final long sequence) {
+        return this.published.get((int) sequence & this.mask) == sequence;
+    }
+
+    /**
+     * Finds the last of the consecutive published sequences starting at the given one.
+     *
+     * @param from The first sequence.
+     * @param max  The maximal number of sequences.
+     * @return The last published sequence of the batch, {@code from - 1} if there is none.
+     */
+    public long availableUpTo(final long from, final int max) {
+        var last = from - 1;
+        while (last + 1 - from < max && this.isPublished(last + 1)) {
+            last++;
+        }
+        return last;
+    }
+
+    /**
+     * Hands the entries up to the given sequence back to the producers.
+     *
+     * @param sequence The last sequence processed by the consumer.
+     */
+    public void release(final long sequence) {
+        // Only the consumer writes, so an ordered store suffices.
+        this.released.lazySet(sequence);
+    }
+}
@@ -0,0 +1,242 @@
+package com.pseuco.np22.rocket;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.pseuco.np22.rocket.RingBuffer.WaitStrategy;
+
+/**
+ * <p>
+ * A {@link Mailbox} whose low priority lane is a {@link RingBuffer}.
+ * </p>
+ *
+ * <p>
+ * The threads of the load balancer send requests without taking a lock and without
+ * allocating a node per message, and the receiving server looks for published messages
+ * in batches. Messages with high priority are rare and go through a separate queue which
+ * is checked before every message with low priority.
+ * </p>
+ *
+ * <p>
+ * Only a single thread may receive messages. A sender claims its slot before it checks
+ * whether the mailbox is closed. If it is closed by then, the slot is published empty
+ * and the message is rejected. Otherwise, the receiver closing the mailbox sees the claim
+ * and waits for the message, such that no message gets lost in a closed mailbox.
+ * </p>
+ */
+public class RingMailbox<M> extends Mailbox<M> {
+    /**
+     * The capacity of the ring if the capacity of the mailbox is unbounded.
+     */
+    private static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /**
+     * The maximal number of messages the receiver looks for at once.
+     */
+    private static final int BATCH_SIZE = 64;
+
+    /**
+     * A reusable slot of the ring.
+     */
+    private static class Slot<M> {
+        /**
+         * The message, {@code null} if the slot has been published empty.
+         */
+        private M message;
+    }
+
+    /**
+     * The low priority lane.
+     */
+    private final RingBuffer<Slot<M>> ring;
+
+    /**
+     * Decides how the receiver waits for messages.
+     */
+    private final WaitStrategy waitStrategy;
+
+    /**
+     * The high priority lane.
+     */
+    private final ConcurrentLinkedQueue<M> high = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Orders messages with high priority and the closing of the mailbox.
+     */
+    private final ReentrantLock highLock = new ReentrantLock();
+
+    /**
+     * Whether the mailbox has been closed.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * The sequence of the next message with low priority, only used by the receiver.
+     */
+    private long next = 0;
+
+    /**
+     * The last sequence of the current batch, only used by the receiver.
+     */
+    private long batchEnd = -1;
+
+    /**
+     * Constructs a new empty {@link RingMailbox}.
+     *
+     * @param lowPriorityCapacity The maximal number of messages with low priority, rounded
+     *                            up to a power of two, {@code 0} means a large default.
+     * @param waitStrategy        Decides how the receiver waits for messages.
+     */
+    public RingMailbox(final int lowPriorityCapacity, final WaitStrategy waitStrategy) {
+        super(lowPriorityCapacity);
+        this.ring = new RingBuffer<>(lowPriorityCapacity > 0 ? lowPriorityCapacity : DEFAULT_CAPACITY, Slot::new);
+        this.waitStrategy = waitStrategy;
+    }
+
+    @Override
+    public void closingMailBox() {
+        this.highLock.lock();
+        try {
+            this.closed = true;
+        } finally {
+            this.highLock.unlock();
+        }
+        this.waitStrategy.signal();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.high.isEmpty() && this.size() == 0;
+    }
+
+    @Override
+    public int size() {
+        return (int) (this.ring.getClaimed() - this.ring.getReleased());
+    }
+
+    @Override
+    public SendResult sendLowPriority(final M message) {
+        if (this.closed) {
+            return SendResult.CLOSED;
+        }
+        final var sequence = this.ring.tryClaim();
+        if (sequence < 0) {
+            return SendResult.FULL;
+        }
+        final var closed = this.closed;
+        if (!closed) {
+            this.ring.get(sequence).message = message;
+        }
+        this.ring.publish(sequence);
+        if (closed) {
+            return SendResult.CLOSED;
+        }
+        this.waitStrategy.signal();
+        this.notifySent();
+        return SendResult.SENT;
+    }
+
+    @Override
+    public boolean sendHighPriority(final M message) {
+        this.highLock.lock();
+        try {
+            if (this.closed) {
+                return false;
+            }
+            if (message instanceof Coalescing) {
+                // The receiver polls without the lock, so it may still get the superseded
+                // message, which is harmless.
+                final var key = ((Coalescing) message).getCoalescingKey();
+                this.high.removeIf(other -> other instanceof Coalescing
+                        && key.equals(((Coalescing) other).getCoalescingKey()));
+            }
+            this.high.add(message);
+        } finally {
+            this.highLock.unlock();
+        }
+        this.waitStrategy.signal();
+        this.notifySent();
+        return true;
+    }
+
+    /**
+     * Takes the next message with low priority if it has been published.
+     */
+    private M pollLow() {
+        while (true) {
+            if (this.next > this.batchEnd) {
+                this.batchEnd = this.ring.availableUpTo(this.next, BATCH_SIZE);
+                if (this.batchEnd < this.next) {
+                    return null;
+                }
+            }
+            final var slot = this.ring.get(this.next);
+            final var message = slot.message;
+            slot.message = null;
+            this.ring.release(this.next);
+            this.next++;
+            if (message != null) {
+                return message;
+            }
+        }
+    }
+
+    /**
+     * Takes the next message, preferring messages with high priority.
+     */
+    private M poll() {
+        final var message = this.high.poll();
+        return message != null ? message : this.pollLow();
+    }
+
+    /**
+     * <p>
+     * Receives a message blocking the receiving thread.
+     * </p>
+     *
+     * <p>
+     * Unlike a plain {@link Mailbox}, a closed {@link RingMailbox} returns {@code null} once
+     * it is drained, as rejected senders may leave empty slots behind.
+     * </p>
+     *
+     * @return The received message or {@code null} if the mailbox is closed and drained.
+     * @throws InterruptedException The thread has been interrupted.
+     */
+    @Override
+    public M recv() throws InterruptedException {
+        while (true) {
+            final var message = this.poll();
+            if (message != null) {
+                return message;
+            }
+            if (this.closed && this.high.isEmpty() && this.next > this.ring.getClaimed()) {
+                return null;
+            }
+            this.waitStrategy.await(() -> this.closed || !this.high.isEmpty() || this.ring.isPublished(this.next));
+        }
+    }
+
+    /**
+     * Blocks the receiving thread until a message is available without taking it. Returns
+     * right away if the mailbox is closed, like {@link #recv}.
+     *
+     * @throws InterruptedException The thread has been interrupted.
+     */
+    @Override
+    public void awaitMessage() throws InterruptedException {
+        this.waitStrategy.await(() -> this.closed || !this.high.isEmpty() || this.ring.isPublished(this.next));
+    }
+
+    @Override
+    public M tryRecv() {
+        while (true) {
+            final var message = this.poll();
+            if (message != null || !this.closed || this.next > this.ring.getClaimed()) {
+                return message;
+            }
+            // A sender has claimed a slot before the mailbox has been closed, its message is
+            // published in a moment.
+            Thread.onSpinWait();
+        }
+    }
+}
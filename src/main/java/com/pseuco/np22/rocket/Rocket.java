@@ -1,5 +1,7 @@
 package com.pseuco.np22.rocket;
 
+import java.io.IOException;
+
 import com.pseuco.np22.Config;
 import com.pseuco.np22.NoBonusException;
 import com.pseuco.np22.request.RequestHandler;
@@ -32,6 +34,38 @@ public class Rocket {
         final var coordinator = new Coordinator(config);
         // Start the estimator in its own thread.
         (new Thread(coordinator.estimator)).start();
+        // Push the estimates to clients subscribed to the availability stream.
+        (new Thread(coordinator.broadcaster)).start();
+        // Admit waiting customers in its own thread.
+        if (config.isWaitingRoom()) {
+            (new Thread(coordinator.waitingRoom)).start();
+        }
+        // Start the flusher of the journal in its own thread.
+        if (coordinator.journal.isEnabled()) {
+            (new Thread(coordinator.journal)).start();
+        }
+        // Lease tickets to the other nodes of the cluster.
+        if (config.getAuthorityPort() != 0) {
+            try {
+                (new Thread(new TicketAuthority(coordinator))).start();
+            } catch (IOException error) {
+                System.err.println("Unable to run the ticket authority!");
+                error.printStackTrace();
+                System.exit(1);
+            }
+        }
+        // Exchange availability digests with the other nodes of the cluster.
+        if (coordinator.gossip.isEnabled()) {
+            (new Thread(coordinator.gossip)).start();
+        }
+        // Scale the number of servers according to the load.
+        if (config.isAutoscale()) {
+            (new Thread(coordinator.autoscaler)).start();
+        }
+        // Periodically snapshot the journaled ticket states.
+        if (coordinator.snapshotter.isEnabled()) {
+            (new Thread(coordinator.snapshotter)).start();
+        }
         // Return the load balancer for handling the requests.
         return coordinator.balancer;
     }
@@ -1,8 +1,12 @@
 package com.pseuco.np22.rocket;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.HashMap;
 
@@ -28,7 +32,32 @@ public class Server implements Runnable {
     /**
      * The mailbox of the {@link Estimator}.
      */
-    private final Mailbox<Command<Server>> mailbox = new Mailbox<>();
+    private final Mailbox<Command<Server>> mailbox;
+
+    /**
+     * The number of messages a scheduled server processes before it gives up its worker.
+     */
+    private static final int BATCH_SIZE = 64;
+
+    /**
+     * The pool the server is scheduled on, {@code null} if the server runs in its own thread.
+     */
+    private final Executor scheduler;
+
+    /**
+     * Whether the server is queued on or running on the scheduler.
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean(true);
+
+    /**
+     * Whether threads of the load balancer process requests of idle servers themselves.
+     */
+    private final boolean runToCompletion;
+
+    /**
+     * Serializes the processing of messages in run-to-completion mode.
+     */
+    private final ReentrantLock processingLock = new ReentrantLock();
 
     /**
      * Server state locks
@@ -36,15 +65,51 @@ public class Server implements Runnable {
     private ReentrantLock serverStateLock = new ReentrantLock();
 
     /**
-     * Reservations made by customers.
+     * The state of the server for a single event.
      */
-    private Map<CustomerId, Reservation> reservations = new HashMap<>();
+    private static class Inventory {
+        /**
+         * The event the state belongs to.
+         */
+        private final Event event;
+
+        /**
+         * Reservations made by customers.
+         */
+        private final Map<CustomerId, Reservation> reservations = new HashMap<>();
+
+        /**
+         * Group reservations made by customers, kept apart from the single reservations.
+         */
+        private final Map<CustomerId, GroupReservation> groupReservations = new HashMap<>();
+
+        /**
+         * List of allocated tickets from DB.
+         * Server/Or DB have no tickets left.
+         */
+        private final List<Ticket> allocatedTickets = new ArrayList<>();
+
+        /**
+         * Current ticket estimation from estimator
+         */
+        private int currentTicketEstimation = 0;
+
+        private Inventory(final Event event) {
+            this.event = event;
+        }
+
+        /**
+         * Checks whether customers hold reservations for the event.
+         */
+        private boolean hasReservations() {
+            return !this.reservations.isEmpty() || !this.groupReservations.isEmpty();
+        }
+    }
 
     /**
-     * List of allocated tickets from DB.
-     * Server/Or DB have no tickets left.
+     * The state of the server by event id, created once the server serves an event.
      */
-    private List<Ticket> allocatedTickets = new ArrayList<>();
+    private final Map<String, Inventory> inventories = new HashMap<>();
 
     /*
      * Define Server states
@@ -69,11 +134,6 @@ public class Server implements Runnable {
      */
     private ServerState state = ServerState.ACTIVE;
 
-    /**
-     * Current ticket estimation from estimator
-     */
-    private int currentTicketEstimation = 0;
-
     /**
      * Constructs a new {@link Server}.
      * 
@@ -83,7 +143,18 @@ public class Server implements Runnable {
     public Server(ServerId id, Coordinator coordinator) {
         this.id = id;
         this.coordinator = coordinator;
-
+        final var config = coordinator.getConfig();
+        if (config.getTransport().equals("ring")) {
+            this.mailbox = new RingMailbox<>(config.getMailboxCapacity(),
+                    RingBuffer.WaitStrategy.of(config.getWaitStrategy()));
+        } else {
+            this.mailbox = new Mailbox<>(config.getMailboxCapacity());
+        }
+        this.scheduler = coordinator.getScheduler();
+        this.runToCompletion = config.isRunToCompletion();
+        if (this.scheduler != null) {
+            this.mailbox.setOnSend(this::wakeUp);
+        }
     }
 
     /**
@@ -96,32 +167,77 @@ public class Server implements Runnable {
     }
 
     /**
-     * set ticket estimation
+     * Returns the state of the server for the given event.
      */
-    private void setCurrentTicketEstimation(int i) {
-        this.currentTicketEstimation = i;
+    private Inventory inventoryOf(final Event event) {
+        return this.inventories.computeIfAbsent(event.getId(), id -> new Inventory(event));
     }
 
     /**
-     * set ticket estimation
+     * Returns the timeout of reservations made by the request, i.e., the timeout of the tier
+     * of the customer if there is one and the timeout of the event otherwise. The tier is
+     * given by the client, so it may only shorten the timeout of the event.
      */
-    private int getCurrentTicketEstimation() {
-        return this.currentTicketEstimation;
+    private long timeoutOf(final Event event, final Request request) {
+        final var tierTimeout = request.getCustomerTier().map(this.coordinator.getConfig().getTierTimeouts()::get);
+        return tierTimeout.isPresent() ? Math.min(tierTimeout.get(), event.getTimeout()) : event.getTimeout();
     }
 
     /**
-     * Methode returns the number of allocated tickets "non reserved or sold"
+     * Makes sure that at least the given number of tickets is allocated to the server,
+     * allocating the missing tickets with a single database allocation.
+     * 
+     * @return Whether enough tickets are allocated now.
      */
-    private int getNumAllocatedTickets() {
-        return allocatedTickets.size();
+    private boolean ensureAllocated(final Inventory inventory, final int numTickets) {
+        final var missing = numTickets - inventory.allocatedTickets.size();
+        if (missing > 0) {
+            // also refill the stack for the next requests
+            inventory.allocatedTickets.addAll(inventory.event.getDatabase().allocate(missing + 5));
+        }
+        return inventory.allocatedTickets.size() >= numTickets;
     }
 
     /**
+     * Takes tickets with consecutive ids from the allocated tickets, e.g., adjacent seats.
      * 
-     * @return list with allocated available tickets
+     * @return The tickets or {@code null} if the allocated tickets contain no such block.
+     */
+    private List<Ticket> takeAdjacent(final Inventory inventory, final int numTickets) {
+        final var allocatedTickets = inventory.allocatedTickets;
+        allocatedTickets.sort(Comparator.comparingInt(Ticket::getId));
+        var start = 0;
+        for (int i = 0; i < allocatedTickets.size(); i++) {
+            if (i > 0 && allocatedTickets.get(i).getId() != allocatedTickets.get(i - 1).getId() + 1) {
+                start = i;
+            }
+            if (i - start + 1 == numTickets) {
+                final var block = allocatedTickets.subList(start, i + 1);
+                final List<Ticket> tickets = new ArrayList<>(block);
+                block.clear();
+                return tickets;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Makes the tickets of an aborted reservation available again, returning them to the
+     * database if the server is terminating.
      */
-    private List<Ticket> getAllocatedTickets() {
-        return this.allocatedTickets;
+    private void returnTickets(final Inventory inventory, final List<Ticket> tickets) {
+        if (this.isInTermination()) {
+            inventory.event.getDatabase().deallocate(tickets);
+        } else {
+            inventory.allocatedTickets.addAll(tickets);
+        }
+    }
+
+    /**
+     * Checks whether customers hold reservations of any event at the server.
+     */
+    private boolean hasReservations() {
+        return this.inventories.values().stream().anyMatch(Inventory::hasReservations);
     }
 
     /**
@@ -192,8 +308,8 @@ public class Server implements Runnable {
         try {
             this.state = ServerState.TERMINATED;
             this.getMailbox().closingMailBox();
-            this.coordinator.addToTerminatedServerIds(this.id);
             this.coordinator.removefromInTermination(this.id);
+            this.coordinator.releaseSlot(this.id);
         } finally {
             serverStateLock.unlock();
         }
@@ -203,23 +319,255 @@ public class Server implements Runnable {
      * Aborts and removes reservations with an expired timeout.
      */
     private void clearReservations() {
-        this.reservations.values().removeIf(reservation -> {
-            if (reservation.getAge() > this.coordinator.getConfig().getTimeout()) {
-                // Make the ticket available again,
-                // BUT I have to check if I return the abort ticket to DB or save it localy
-                if (this.isInTermination()) {
-                    List<Ticket> Tickettolist = new ArrayList<Ticket>();
-                    Tickettolist.add(reservation.abort());
-                    this.coordinator.getDatabase().deallocate(Tickettolist);
+        final var now = System.currentTimeMillis();
+        for (final var inventory : this.inventories.values()) {
+            final var event = inventory.event;
+            inventory.reservations.values().removeIf(reservation -> {
+                if (reservation.isExpired(now)) {
+                    event.getJournal().logAbort(reservation.getTicketId());
+                    event.getGossip().countAvailable(1);
+                    // Make the ticket available again,
+                    // BUT I have to check if I return the abort ticket to DB or save it localy
+                    if (this.isInTermination()) {
+                        List<Ticket> Tickettolist = new ArrayList<Ticket>();
+                        Tickettolist.add(reservation.abort());
+                        event.getDatabase().deallocate(Tickettolist);
+                    } else {
+                        inventory.allocatedTickets.add(reservation.abort());
+                    }
+                    return true;
                 } else {
-                    this.allocatedTickets.add(reservation.abort());
+                    return false;
+                }
+            });
+            inventory.groupReservations.values().removeIf(group -> {
+                if (group.isExpired(now)) {
+                    group.getTicketIds().forEach(event.getJournal()::logAbort);
+                    event.getGossip().countAvailable(group.getTicketIds().size());
+                    this.returnTickets(inventory, group.abort());
+                    return true;
                 }
-                return true;
-            } else {
+                return false;
+            });
+        }
+    }
+
+    /**
+     * <p>
+     * Hands over the reservations to a surviving server and forwards all queued requests
+     * there, such that the server can terminate right away.
+     * </p>
+     * 
+     * <p>
+     * If there is no surviving server, the server keeps its reservations and terminates
+     * once they have been bought, aborted or timed out.
+     * </p>
+     */
+    private void drain() {
+        while (this.coordinator.getNumOfServers() > 0) {
+            ServerId survivorId = this.coordinator.pickRandomServer();
+            final Map<String, Map<CustomerId, Reservation>> reservations = new HashMap<>();
+            final Map<String, Map<CustomerId, GroupReservation>> groupReservations = new HashMap<>();
+            this.inventories.forEach((eventId, inventory) -> {
+                reservations.put(eventId, new HashMap<>(inventory.reservations));
+                groupReservations.put(eventId, new HashMap<>(inventory.groupReservations));
+            });
+            Command<Server> adoption = new MsgAdoptReservations(reservations, groupReservations);
+            final var survivor = this.coordinator.getServerMailbox(survivorId);
+            if (survivor == null || !survivor.sendHighPriority(adoption)) {
+                // the survivor is draining itself, pick another one
+                continue;
+            }
+            this.inventories.values().forEach(inventory -> {
+                inventory.reservations.clear();
+                inventory.groupReservations.clear();
+            });
+            // register the forward before closing the mailbox, the balancer follows it as soon
+            // as it finds the mailbox closed
+            this.coordinator.addForward(this.id, survivorId);
+            this.getMailbox().closingMailBox();
+            Command<Server> message;
+            while ((message = this.getMailbox().tryRecv()) != null) {
+                // estimates are meaningless for a drained server, but reservations handed over
+                // by another server draining at the same time must reach the survivor as well
+                if (message instanceof MsgProcessRequest || message instanceof MsgAdoptReservations) {
+                    this.forward(message, survivorId);
+                }
+            }
+            return;
+        }
+    }
+
+    /**
+     * Forwards a queued request or adoption to the server which took over the reservations.
+     */
+    private void forward(Command<Server> message, ServerId survivorId) {
+        ServerId target = survivorId;
+        while (true) {
+            ServerId next = this.coordinator.resolveForward(target);
+            // we use the high priority lane such that the request is processed after the
+            // adoption of the reservations and is never rejected again
+            final var mailbox = this.coordinator.getServerMailbox(next);
+            if (mailbox != null && mailbox.sendHighPriority(message)) {
+                return;
+            }
+            // the target terminated in the meantime
+            target = next.equals(target) ? this.coordinator.pickRandomServer() : next;
+        }
+    }
+
+    /**
+     * <p>
+     * Takes the initial tickets and the reservations which survived a restart.
+     * </p>
+     * 
+     * <p>
+     * Must be called before the server is published in its slot, such that threads of the
+     * load balancer processing a request in run-to-completion mode never see a server which
+     * is still starting up. Starting the thread or scheduling the server afterwards makes the
+     * state visible to the server itself.
+     * </p>
+     * 
+     * @return The customers of the reservations which survived a restart.
+     */
+    List<CustomerId> startUp() {
+        final var customers = new ArrayList<CustomerId>();
+        for (final var event : this.coordinator.getEvents()) {
+            final var inventory = this.inventoryOf(event);
+            // Get initial number of tickets from the data base
+            inventory.allocatedTickets.addAll(event.getDatabase().allocate(5));
+            // Take over reservations which survived a restart, the balancer routes their
+            // customers here once the server has been published.
+            final var recovered = event.getDatabase().takeRecovered();
+            final var recoveredGroups = event.getDatabase().takeRecoveredGroups();
+            inventory.reservations.putAll(recovered);
+            inventory.groupReservations.putAll(recoveredGroups);
+            customers.addAll(recovered.keySet());
+            customers.addAll(recoveredGroups.keySet());
+        }
+        return customers;
+    }
+
+    /**
+     * Checks whether a terminating server has nothing left to do.
+     */
+    private boolean isDone() {
+        return !isActive() && !this.hasReservations() && this.getMailbox().isEmpty();
+    }
+
+    /**
+     * Starts the server on the scheduler instead of its own thread.
+     */
+    public void schedule() {
+        this.scheduler.execute(this::runBatch);
+    }
+
+    /**
+     * Schedules the server after a message has been sent unless it is scheduled already.
+     */
+    private void wakeUp() {
+        if (this.scheduled.compareAndSet(false, true)) {
+            this.scheduler.execute(this::runBatch);
+        }
+    }
+
+    /**
+     * <p>
+     * Processes a bounded batch of messages on a worker of the scheduler.
+     * </p>
+     * 
+     * <p>
+     * The server is scheduled at most once at a time, so its state is still touched by a
+     * single thread at a time, and a busy server gives up its worker after a batch such that
+     * the other servers get their turn.
+     * </p>
+     */
+    private void runBatch() {
+        for (var processed = 0; processed < BATCH_SIZE; processed++) {
+            if (!this.processNext()) {
+                break;
+            }
+        }
+        if (this.isDone()) {
+            // the server stays marked as scheduled, so it never runs again
+            this.terminateServer();
+            return;
+        }
+        this.scheduled.set(false);
+        // a message sent after the last receive has not scheduled the server again
+        if (!this.getMailbox().isEmpty()) {
+            this.wakeUp();
+        }
+    }
+
+    /**
+     * <p>
+     * Takes the next message from the mailbox and processes it after aborting expired
+     * reservations.
+     * </p>
+     * 
+     * <p>
+     * In run-to-completion mode the message is taken while holding the processing lock, such
+     * that threads of the load balancer never find the mailbox empty while a message taken
+     * from it has not been processed yet.
+     * </p>
+     * 
+     * @return Whether there has been a message to process.
+     */
+    private boolean processNext() {
+        if (!this.runToCompletion) {
+            final var message = this.getMailbox().tryRecv();
+            if (message == null) {
                 return false;
             }
-        });
+            this.clearReservations();
+            message.execute(this);
+            return true;
+        }
+        this.processingLock.lock();
+        try {
+            final var message = this.getMailbox().tryRecv();
+            if (message == null) {
+                return false;
+            }
+            this.clearReservations();
+            message.execute(this);
+            return true;
+        } finally {
+            this.processingLock.unlock();
+        }
+    }
 
+    /**
+     * <p>
+     * Processes a message in the calling thread if the server is idle, e.g., a request in a
+     * thread of the load balancer in run-to-completion mode.
+     * </p>
+     * 
+     * <p>
+     * Queued messages go first, so the message is only processed if the mailbox is empty.
+     * The server takes its messages under the same lock, so a message it has taken is
+     * always processed before. Terminating servers only process messages from their mailbox, such that they notice
+     * when they are done.
+     * </p>
+     * 
+     * @param message The message.
+     * @return Whether the message has been processed, otherwise it must be sent.
+     */
+    public boolean tryProcess(final Command<Server> message) {
+        if (!this.processingLock.tryLock()) {
+            return false;
+        }
+        try {
+            if (!this.isActive() || !this.getMailbox().isEmpty()) {
+                return false;
+            }
+            this.clearReservations();
+            message.execute(this);
+            return true;
+        } finally {
+            this.processingLock.unlock();
+        }
     }
 
     @Override
@@ -229,25 +577,13 @@ public class Server implements Runnable {
          */
         try {
             boolean keepHandlingMsg = true;
-            // Get initial number of tickets from the data base
-            List<Ticket> tikets = new ArrayList<>();
-            tikets = this.coordinator.getDatabase().allocate(5);
-            if (!tikets.isEmpty()) {
-                int stodForLoop = tikets.size();
-                for (int i = 0; i < stodForLoop; i++) {
-                    this.allocatedTickets.add(tikets.remove(0));
-                }
-            }
             // Start handling the request
             while (keepHandlingMsg) {
-                this.clearReservations();
-                Command<Server> message = (Command<Server>) getMailbox().recv();
-                assert (message != null);
-                // make sure that the mailbox did not returns a null msg to avoid calling execute on null
-                if (message != null) {
-                    message.execute(this);
-                }
-                if (!isActive() && this.reservations.isEmpty() && this.getMailbox().isEmpty()) {
+                // wait for a message without taking it, it is taken together with the
+                // processing lock such that threads of the load balancer cannot overtake it
+                getMailbox().awaitMessage();
+                this.processNext();
+                if (this.isDone()) {
                     keepHandlingMsg = false;
                 }
             }
@@ -270,13 +606,20 @@ public class Server implements Runnable {
          */
         private final Request request;
 
+        /**
+         * The value of {@link System#nanoTime} when the request arrived at the balancer.
+         */
+        private final long receivedAt;
+
         /**
          * Constructs a new {@link MsgProcessRequest} message.
          * 
-         * @param request The {@link Request} to process.
+         * @param request    The {@link Request} to process.
+         * @param receivedAt The value of {@link System#nanoTime} when the request arrived.
          */
-        public MsgProcessRequest(Request request) {
+        public MsgProcessRequest(Request request, long receivedAt) {
             this.request = request;
+            this.receivedAt = receivedAt;
         }
 
         @Override
@@ -284,39 +627,59 @@ public class Server implements Runnable {
             /*
              * 📌 Hint: Use the 🐌 implementation as a basis.
              */
+            // requests forwarded from a drained server stick to this server from now on
+            if (request.getServerId().isEmpty() || !request.getServerId().get().equals(obj.id)) {
+                request.setServerId(obj.id);
+            }
+            // skip requests nobody is waiting for anymore, the client has given up already
+            final var deadline = obj.coordinator.getConfig().getRequestDeadline();
+            if (deadline > 0 && System.nanoTime() - receivedAt > deadline * 1_000_000L) {
+                obj.coordinator.getMetrics().countDropped();
+                request.respondWithUnavailable(Balancer.RETRY_AFTER);
+                return;
+            }
+            final var event = obj.coordinator.getEvent(request.getEventId().orElse(Event.DEFAULT_ID));
+            if (event == null) {
+                request.respondWithError("Unknown event!");
+                return;
+            }
+            final var inventory = obj.inventoryOf(event);
             // note: this implementaion is very identical with the 🐌 implementation
             obj.clearReservations();
             switch (request.getKind()) {
                 case NUM_AVAILABLE_TICKETS: {
                     // respond with an approximation of the actual number.
-                    int currentTicketEstimation = obj.getCurrentTicketEstimation() + obj.getNumAllocatedTickets();
+                    int currentTicketEstimation = inventory.currentTicketEstimation + inventory.allocatedTickets.size();
                     request.respondWithInt(currentTicketEstimation);
 
                     break;
                 }
                 case RESERVE_TICKET: {
                     final var customer = request.getCustomerId();
-                    if (obj.reservations.containsKey(customer)) {
+                    if (inventory.reservations.containsKey(customer)) {
                         // We do not allow a customer to reserve more than a ticket at a time.
                         request.respondWithError("A ticket has already been reserved!");
 
-                    } else if (obj.getNumAllocatedTickets() > 0 && obj.isActive()) {
+                    } else if (inventory.allocatedTickets.size() > 0 && obj.isActive()) {
                         // Take a ticket from the stack of available tickets and reserve it.
-                        final var ticket = obj.getAllocatedTickets().remove(0);
-                        obj.reservations.put(customer, new Reservation(ticket));
+                        final var ticket = inventory.allocatedTickets.remove(0);
+                        final var reservation = new Reservation(ticket, obj.timeoutOf(event, request));
+                        inventory.reservations.put(customer, reservation);
+                        event.getJournal().logReserve(ticket.getId(), customer, reservation.getExpiresAt());
+                        event.getGossip().countTaken(1);
 
                         // Respond with the id of the reserved ticket.
                         request.respondWithInt(ticket.getId());
                         // there is no tickets localy but I am Activ, so I have to get tickets from DB
-                    } else if (obj.getNumAllocatedTickets() == 0 && obj.isActive()) {
+                    } else if (inventory.allocatedTickets.size() == 0 && obj.isActive()) {
                         List<Ticket> tikets = new ArrayList<>();
-                        tikets = obj.coordinator.getDatabase().allocate(5);
+                        tikets = event.getDatabase().allocate(5);
                         // Check if I get Tickets from DB or not
                         if (!tikets.isEmpty()) {
                             // Yes I get, so save it localy
                             int stodForLoop = tikets.size();
                             for (int i = 0; i < stodForLoop; i++) {
-                                obj.getAllocatedTickets().add(tikets.remove(0));
+                                inventory.allocatedTickets.add(tikets.remove(0));
                             }
                             // No I did not get tickets
                         } else {
@@ -326,8 +689,11 @@ public class Server implements Runnable {
                         }
 
                         // Take a ticket from the stack of available tickets and reserve it.
-                        final var ticket = obj.getAllocatedTickets().remove(0);
-                        obj.reservations.put(customer, new Reservation(ticket));
+                        final var ticket = inventory.allocatedTickets.remove(0);
+                        final var reservation = new Reservation(ticket, obj.timeoutOf(event, request));
+                        inventory.reservations.put(customer, reservation);
+                        event.getJournal().logReserve(ticket.getId(), customer, reservation.getExpiresAt());
+                        event.getGossip().countTaken(1);
 
                         // Respond with the id of the reserved ticket.
                         request.respondWithInt(ticket.getId());
@@ -343,11 +709,11 @@ public class Server implements Runnable {
                 }
                 case ABORT_PURCHASE: {
                     final var customer = request.getCustomerId();
-                    if (!obj.reservations.containsKey(customer)) {
+                    if (!inventory.reservations.containsKey(customer)) {
                         // Without a reservation there is nothing to abort.
                         request.respondWithError("No ticket has been reserved!");
                     } else {
-                        final var reservation = obj.reservations.get(customer);
+                        final var reservation = inventory.reservations.get(customer);
                         final var ticketId = request.readInt();
                         if (ticketId.isEmpty()) {
                             // The client is supposed to provide a ticket id.
@@ -355,16 +721,18 @@ public class Server implements Runnable {
                         } else if (ticketId.get() == reservation.getTicketId()) {
                             // Abort the reservation and put the ticket back on the allocatedTickets.
                             final var ticket = reservation.abort();
+                            event.getJournal().logAbort(ticket.getId());
+                            event.getGossip().countAvailable(1);
                             // I did abort, but I have to check if I return the abort ticket to DB or save it localy
                             if (obj.isInTermination()) {
                                 List<Ticket> Tickettolist = new ArrayList<Ticket>();
                                 Tickettolist.add(ticket);
-                                obj.coordinator.getDatabase().deallocate(Tickettolist);
+                                event.getDatabase().deallocate(Tickettolist);
 
                             } else {
-                                obj.allocatedTickets.add(ticket);
+                                inventory.allocatedTickets.add(ticket);
                             }
-                            obj.reservations.remove(customer);
+                            inventory.reservations.remove(customer);
                             // Respond with the id of the formerly reserved ticket.
                             request.respondWithInt(ticket.getId());
                         } else {
@@ -374,34 +742,183 @@ public class Server implements Runnable {
                     }
                     break;
                 }
+                case EXTEND_RESERVATION: {
+                    final var customer = request.getCustomerId();
+                    final var reservation = inventory.reservations.get(customer);
+                    final var group = inventory.groupReservations.get(customer);
+                    final var ticketId = request.readInt();
+                    final var timeout = obj.timeoutOf(event, request);
+                    final var maxExtensions = obj.coordinator.getConfig().getMaxExtensions();
+                    if (reservation == null && group == null) {
+                        // Without a reservation there is nothing to extend.
+                        request.respondWithError("No ticket has been reserved!");
+                    } else if (ticketId.isEmpty()) {
+                        // The client is supposed to provide a ticket id.
+                        request.respondWithError("No ticket id provided!");
+                    } else if (reservation != null && ticketId.get() == reservation.getTicketId()) {
+                        if (reservation.getNumExtensions() >= maxExtensions) {
+                            request.respondWithError("The reservation cannot be extended anymore!");
+                            break;
+                        }
+                        reservation.extend(timeout);
+                        // Journal the renewed hold such that it survives a restart as well.
+                        event.getJournal().logReserve(ticketId.get(), customer, reservation.getExpiresAt());
+                        // Respond with the time in milliseconds the reservation is held now.
+                        request.respondWithInt((int) timeout);
+                    } else if (group != null && group.getTicketIds().contains(ticketId.get())) {
+                        if (group.getNumExtensions() >= maxExtensions) {
+                            request.respondWithError("The reservation cannot be extended anymore!");
+                            break;
+                        }
+                        group.extend(timeout);
+                        group.getTicketIds().forEach(
+                                id -> event.getJournal().logReserve(id, customer, group.getExpiresAt()));
+                        request.respondWithInt((int) timeout);
+                    } else {
+                        // The id does not match the id of the reservation.
+                        request.respondWithError("Invalid ticket id provided!");
+                    }
+                    break;
+                }
                 case BUY_TICKET: {
                     final var customer = request.getCustomerId();
-                    if (!obj.reservations.containsKey(customer)) {
+                    if (!inventory.reservations.containsKey(customer)) {
                         // Without a reservation there is nothing to buy.
                         request.respondWithError("No ticket has been reserved!");
                     } else {
-                        final var reservation = obj.reservations.get(customer);
+                        final var reservation = inventory.reservations.get(customer);
                         final var ticketId = request.readInt();
                         if (ticketId.isEmpty()) {
                             // The client is supposed to provide a ticket id.
                             request.respondWithError("No ticket id provided!");
-                        } else if (ticketId.get() == reservation.getTicketId()) {
-                            // Sell the ticket to the customer.
-                            final var ticket = reservation.sell();
-                            obj.reservations.remove(customer);
-                            // Respond with the id of the sold ticket.
-                            request.respondWithInt(ticket.getId());
-
-                        } else {
+                        } else if (ticketId.get() != reservation.getTicketId()) {
                             // The id does not match the id of the reservation.
                             request.respondWithError("Invalid ticket id provided!");
+                        } else if (!event.getDatabase().confirmSale(ticketId.get())) {
+                            // The lease on the ticket expired and it may have been sold elsewhere.
+                            // Return the ticket in case it is still leased to us, counted as
+                            // available first like the tickets of a failed group sale.
+                            inventory.reservations.remove(customer);
+                            final var ticket = reservation.abort();
+                            event.getJournal().logAbort(ticket.getId());
+                            event.getGossip().countAvailable(1);
+                            event.getDatabase().deallocate(List.of(ticket));
+                            request.respondWithError("The reservation is no longer valid!");
+                        } else {
+                            // Sell the ticket to the customer.
+                            final var ticket = reservation.sell();
+                            inventory.reservations.remove(customer);
+                            // Respond with the id of the sold ticket once the sale is durable.
+                            event.getJournal().logSell(ticket.getId(),
+                                    () -> request.respondWithInt(ticket.getId()));
+                        }
+                    }
+                    break;
+                }
+                case RESERVE_TICKETS: {
+                    final var customer = request.getCustomerId();
+                    final var numTickets = request.readInt();
+                    if (inventory.groupReservations.containsKey(customer)) {
+                        // We do not allow a customer to reserve more than a group at a time.
+                        request.respondWithError("Tickets have already been reserved!");
+                    } else if (numTickets.isEmpty() || numTickets.get() < 1
+                            || numTickets.get() > obj.coordinator.getConfig().getMaxGroupSize()) {
+                        request.respondWithError("Invalid number of tickets provided!");
+                    } else if (obj.isActive()) {
+                        // Prefer adjacent tickets, first from the stack of available tickets, then
+                        // as a block from the database.
+                        var tickets = obj.takeAdjacent(inventory, numTickets.get());
+                        if (tickets == null) {
+                            final var block = event.getDatabase().allocateBlock(numTickets.get());
+                            tickets = block.isEmpty() ? null : block;
+                        }
+                        if (tickets == null) {
+                            if (!obj.ensureAllocated(inventory, numTickets.get())) {
+                                // All or nothing, keep the tickets we got for the next requests.
+                                request.respondWithSoldOut();
+                                break;
+                            }
+                            // Scattered tickets are better than none.
+                            tickets = obj.takeAdjacent(inventory, numTickets.get());
+                            if (tickets == null) {
+                                final var scattered = inventory.allocatedTickets.subList(0, numTickets.get());
+                                tickets = new ArrayList<>(scattered);
+                                scattered.clear();
+                            }
+                        }
+                        final var group = new GroupReservation(tickets, obj.timeoutOf(event, request));
+                        inventory.groupReservations.put(customer, group);
+                        group.getTicketIds().forEach(ticketId -> event.getJournal().logReserve(ticketId,
+                                customer, group.getExpiresAt()));
+                        event.getGossip().countTaken(numTickets.get());
+                        // Respond with the ids of the reserved tickets.
+                        request.respondWithInts(group.getTicketIds());
+                    } else {
+                        // We are terminating, the client has to try another server.
+                        request.setServerId(obj.coordinator.pickRandomServer());
+                        request.respondWithError("this server is down");
+                    }
+                    break;
+                }
+                case ABORT_TICKETS: {
+                    final var customer = request.getCustomerId();
+                    final var group = inventory.groupReservations.get(customer);
+                    final var ticketIds = request.readInts();
+                    if (group == null) {
+                        // Without a reservation there is nothing to abort.
+                        request.respondWithError("No tickets have been reserved!");
+                    } else if (ticketIds.isEmpty() || !group.matches(ticketIds.get())) {
+                        // The client is supposed to provide the ids of all tickets of the group.
+                        request.respondWithError("Invalid ticket ids provided!");
+                    } else {
+                        inventory.groupReservations.remove(customer);
+                        group.getTicketIds().forEach(event.getJournal()::logAbort);
+                        event.getGossip().countAvailable(group.getTicketIds().size());
+                        obj.returnTickets(inventory, group.abort());
+                        // Respond with the ids of the formerly reserved tickets.
+                        request.respondWithInts(group.getTicketIds());
+                    }
+                    break;
+                }
+                case BUY_TICKETS: {
+                    final var customer = request.getCustomerId();
+                    final var group = inventory.groupReservations.get(customer);
+                    final var ticketIds = request.readInts();
+                    if (group == null) {
+                        // Without a reservation there is nothing to buy.
+                        request.respondWithError("No tickets have been reserved!");
+                    } else if (ticketIds.isEmpty() || !group.matches(ticketIds.get())) {
+                        // The client is supposed to provide the ids of all tickets of the group.
+                        request.respondWithError("Invalid ticket ids provided!");
+                    } else {
+                        inventory.groupReservations.remove(customer);
+                        final var ids = group.getTicketIds();
+                        if (!event.getDatabase().confirmSales(ids)) {
+                            // A lease expired and the tickets may have been sold elsewhere. The
+                            // group is confirmed all or nothing, so none of its tickets has been
+                            // sold and those still leased to us are returned. Returning counts
+                            // them as taken again, so count them as available first.
+                            event.getGossip().countAvailable(ids.size());
+                            event.getDatabase().deallocate(group.abort());
+                            ids.forEach(event.getJournal()::logAbort);
+                            request.respondWithError("The reservation is no longer valid!");
+                            break;
                         }
+                        // Sell the tickets to the customer and respond once all sales are durable.
+                        group.sell();
+                        final var pending = new AtomicInteger(ids.size());
+                        ids.forEach(ticketId -> event.getJournal().logSell(ticketId, () -> {
+                            if (pending.decrementAndGet() == 0) {
+                                request.respondWithInts(ids);
+                            }
+                        }));
                     }
                     break;
                 }
                 default:
                     break;
             }
+            obj.coordinator.getMetrics().recordLatency(System.nanoTime() - receivedAt);
         }
     }
 
@@ -413,12 +930,18 @@ public class Server implements Runnable {
         public void execute(Server obj) {
             // if the server have any Available (non reserved or sold ) ticket he should deallocate
             // them .
-            if (!obj.getAllocatedTickets().isEmpty()) {
-                obj.coordinator.getDatabase().deallocate(obj.getAllocatedTickets());
+            for (final var inventory : obj.inventories.values()) {
+                if (!inventory.allocatedTickets.isEmpty()) {
+                    inventory.event.getDatabase().deallocate(inventory.allocatedTickets);
+                    inventory.allocatedTickets.clear();
+                }
             }
             // put state of active to false so the termination steps are happining now
             obj.deactivateServer();
             obj.clearReservations();
+            // hand over the remaining reservations to a surviving server, if there is none we
+            // have to wait for them as described below.
+            obj.drain();
 
             // now the server has to complete the request of already reserved tickets ,this all will
             // happen in "execute of msgprocess".
@@ -428,23 +951,111 @@ public class Server implements Runnable {
         }
     }
 
+    /**
+     * This message is sent by the {@link Balancer} to make the server expire its
+     * reservations while no requests reach the server.
+     */
+    public static class MsgClearReservations implements Command<Server> {
+        @Override
+        public void execute(Server obj) {
+            obj.clearReservations();
+        }
+    }
+
+    /**
+     * This message is sent by a draining server to hand over its reservations.
+     */
+    public static class MsgAdoptReservations implements Command<Server> {
+        /**
+         * The reservations of the draining server by event id and customer.
+         */
+        private final Map<String, Map<CustomerId, Reservation>> reservations;
+
+        /**
+         * The group reservations of the draining server by event id and customer.
+         */
+        private final Map<String, Map<CustomerId, GroupReservation>> groupReservations;
+
+        /**
+         * Constructs a new {@link MsgAdoptReservations} message.
+         * 
+         * @param reservations      The reservations to hand over by event id.
+         * @param groupReservations The group reservations to hand over by event id.
+         */
+        public MsgAdoptReservations(final Map<String, Map<CustomerId, Reservation>> reservations,
+                final Map<String, Map<CustomerId, GroupReservation>> groupReservations) {
+            this.reservations = reservations;
+            this.groupReservations = groupReservations;
+        }
+
+        @Override
+        public void execute(Server obj) {
+            // The reservations keep their original reservation time and thus their deadline.
+            this.reservations.forEach((eventId, reservations) -> {
+                final var inventory = obj.inventoryOf(obj.coordinator.getEvent(eventId));
+                final var event = inventory.event;
+                reservations.forEach((customer, reservation) -> {
+                    if (!inventory.reservations.containsKey(customer)) {
+                        inventory.reservations.put(customer, reservation);
+                    } else {
+                        // We do not allow a customer to reserve more than a ticket at a time.
+                        final var ticket = reservation.abort();
+                        event.getJournal().logAbort(ticket.getId());
+                        event.getGossip().countAvailable(1);
+                        if (obj.isInTermination()) {
+                            List<Ticket> Tickettolist = new ArrayList<Ticket>();
+                            Tickettolist.add(ticket);
+                            event.getDatabase().deallocate(Tickettolist);
+                        } else {
+                            inventory.allocatedTickets.add(ticket);
+                        }
+                    }
+                });
+            });
+            this.groupReservations.forEach((eventId, groupReservations) -> {
+                final var inventory = obj.inventoryOf(obj.coordinator.getEvent(eventId));
+                final var event = inventory.event;
+                groupReservations.forEach((customer, group) -> {
+                    if (!inventory.groupReservations.containsKey(customer)) {
+                        inventory.groupReservations.put(customer, group);
+                    } else {
+                        group.getTicketIds().forEach(event.getJournal()::logAbort);
+                        event.getGossip().countAvailable(group.getTicketIds().size());
+                        obj.returnTickets(inventory, group.abort());
+                    }
+                });
+            });
+        }
+    }
+
     /**
      * This message is periodically sent by the {@link Estimator} to every server to inform
      * each server about the number of available tickets excluding those allocated to the
      * respective server itself.
      */
-    public static class MsgTicketsAvailable implements Command<Server> {
-        private final int numAvailable;
+    public static class MsgTicketsAvailable implements Command<Server>, Mailbox.Coalescing {
+        /**
+         * The number of available tickets by event id.
+         */
+        private final Map<String, Integer> numAvailable;
 
         /**
          * Constructs a new {@link MsgTicketsAvailable} message.
          * 
-         * @param numAvailable The number of available tickets.
+         * @param numAvailable The number of available tickets by event id.
          */
-        public MsgTicketsAvailable(final int numAvailable) {
+        public MsgTicketsAvailable(final Map<String, Integer> numAvailable) {
             this.numAvailable = numAvailable;
         }
 
+        /**
+         * A newer estimate supersedes an estimate the server has not processed yet.
+         */
+        @Override
+        public Object getCoalescingKey() {
+            return MsgTicketsAvailable.class;
+        }
+
         @Override
         public void execute(Server obj) {
             obj.clearReservations();
@@ -457,12 +1068,15 @@ public class Server implements Runnable {
             // mailbox. You can obtain this mailbox as follows:
             // final var mailbox = obj.coordinator.getEstimatorMailbox();
 
-            // update the estimation of tickets
-            obj.setCurrentTicketEstimation(numAvailable);
-
             // respond to estimator in these steps :
-            // 1) find out how many available ticket the server have
-            int availableTicketAllocatedByServer = obj.getAllocatedTickets().size();
+            // 1) update the estimation of every event and find out how many available ticket
+            // the server have
+            final Map<String, Integer> availableTicketAllocatedByServer = new HashMap<>();
+            this.numAvailable.forEach((eventId, numAvailable) -> {
+                final var inventory = obj.inventoryOf(obj.coordinator.getEvent(eventId));
+                inventory.currentTicketEstimation = numAvailable;
+                availableTicketAllocatedByServer.put(eventId, inventory.allocatedTickets.size());
+            });
 
             // 2) create he msg to send to estimator
             MsgAvailableServer msgAvailableServer = new MsgAvailableServer(obj.id, availableTicketAllocatedByServer);
@@ -0,0 +1,347 @@
+package com.pseuco.np22.rocket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+import com.pseuco.np22.request.CustomerId;
+
+/**
+ * <p>
+ * A compact image of the ticket states as recorded by the {@link Journal}.
+ * </p>
+ *
+ * <p>
+ * The image consists of a bitset of sold tickets and the outstanding reservations. It
+ * covers the journal up to {@link #getJournalOffset()} in the segment of
+ * {@link #getJournalGeneration()}, so recovering the state only requires replaying the
+ * journal from this position on.
+ * </p>
+ */
+public class Snapshot {
+    /**
+     * Marks a snapshot file.
+     */
+    private static final int MAGIC = 0x524B5454;
+
+    /**
+     * Marks a snapshot file written before the journal has been split into segments, it
+     * covers the first segment.
+     */
+    private static final int MAGIC_UNSEGMENTED = 0x524B5453;
+
+    /**
+     * An outstanding reservation recorded in the journal.
+     */
+    public static class Hold {
+        /**
+         * The customer who reserved the ticket.
+         */
+        private final CustomerId customer;
+        /**
+         * The system time at which the reservation expires.
+         */
+        private final long expiresAt;
+
+        /**
+         * Constructs a new {@link Hold}.
+         *
+         * @param customer  The customer who reserved the ticket.
+         * @param expiresAt The system time at which the reservation expires.
+         */
+        public Hold(final CustomerId customer, final long expiresAt) {
+            this.customer = customer;
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * Returns the customer who reserved the ticket.
+         *
+         * @return The customer who reserved the ticket.
+         */
+        public CustomerId getCustomer() {
+            return this.customer;
+        }
+
+        /**
+         * Returns the system time at which the reservation expires.
+         *
+         * @return The system time at which the reservation expires.
+         */
+        public long getExpiresAt() {
+            return this.expiresAt;
+        }
+    }
+
+    /**
+     * The number of tickets covered by the image.
+     */
+    private final int numTickets;
+
+    /**
+     * The ids of the sold tickets.
+     */
+    private final BitSet sold;
+
+    /**
+     * The outstanding reservations by ticket id.
+     */
+    private final Map<Integer, Hold> holds;
+
+    /**
+     * The generation of the journal segment which is applied next.
+     */
+    private long journalGeneration;
+
+    /**
+     * The offset up to which the current journal segment has been applied.
+     */
+    private long journalOffset;
+
+    /**
+     * Constructs a new {@link Snapshot}.
+     */
+    private Snapshot(final int numTickets, final BitSet sold, final Map<Integer, Hold> holds,
+            final long journalGeneration, final long journalOffset) {
+        this.numTickets = numTickets;
+        this.sold = sold;
+        this.holds = holds;
+        this.journalGeneration = journalGeneration;
+        this.journalOffset = journalOffset;
+    }
+
+    /**
+     * Constructs an image where all tickets are available.
+     *
+     * @param numTickets The number of tickets.
+     * @return The image.
+     */
+    public static Snapshot empty(final int numTickets) {
+        return new Snapshot(numTickets, new BitSet(numTickets), new HashMap<>(), 0, 0);
+    }
+
+    /**
+     * Loads a snapshot file by memory-mapping it.
+     *
+     * @param path       The path of the snapshot file.
+     * @param numTickets The number of tickets of the system.
+     * @return The image stored in the file.
+     * @throws IOException When the file cannot be read or is not a valid snapshot.
+     */
+    public static Snapshot load(final Path path, final int numTickets) throws IOException {
+        try (final var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            final var magic = buffer.getInt();
+            if (magic != MAGIC && magic != MAGIC_UNSEGMENTED) {
+                throw new IOException("Not a snapshot file: " + path);
+            }
+            final var snapshotTickets = buffer.getInt();
+            if (snapshotTickets != numTickets) {
+                throw new IOException("Snapshot is for " + snapshotTickets + " tickets, not " + numTickets);
+            }
+            final var journalGeneration = magic == MAGIC ? buffer.getLong() : 0;
+            final var journalOffset = buffer.getLong();
+            final var numWords = buffer.getInt();
+            // The bitset is read in bulk directly from the mapping.
+            final var words = buffer.slice(buffer.position(), numWords * Long.BYTES).asLongBuffer();
+            final var sold = BitSet.valueOf(words);
+            buffer.position(buffer.position() + numWords * Long.BYTES);
+            final var numHolds = buffer.getInt();
+            final Map<Integer, Hold> holds = new HashMap<>();
+            for (int i = 0; i < numHolds; i++) {
+                final var ticketId = buffer.getInt();
+                final var customer = new CustomerId(new UUID(buffer.getLong(), buffer.getLong()));
+                holds.put(ticketId, new Hold(customer, buffer.getLong()));
+            }
+            return new Snapshot(numTickets, sold, holds, journalGeneration, journalOffset);
+        }
+    }
+
+    /**
+     * Writes the image to a snapshot file, atomically replacing any previous snapshot.
+     *
+     * @param path The path of the snapshot file.
+     * @throws IOException When the file cannot be written.
+     */
+    public void write(final Path path) throws IOException {
+        final var words = this.sold.toLongArray();
+        final var size = 4 + 4 + 8 + 8 + 4 + words.length * Long.BYTES + 4 + this.holds.size() * 28;
+        final var buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC);
+        buffer.putInt(this.numTickets);
+        buffer.putLong(this.journalGeneration);
+        buffer.putLong(this.journalOffset);
+        buffer.putInt(words.length);
+        buffer.asLongBuffer().put(words);
+        buffer.position(buffer.position() + words.length * Long.BYTES);
+        buffer.putInt(this.holds.size());
+        for (final var entry : this.holds.entrySet()) {
+            buffer.putInt(entry.getKey());
+            buffer.putLong(entry.getValue().customer.getUUID().getMostSignificantBits());
+            buffer.putLong(entry.getValue().customer.getUUID().getLeastSignificantBits());
+            buffer.putLong(entry.getValue().expiresAt);
+        }
+        buffer.flip();
+        // Write to a temporary file first such that a crash never leaves a torn snapshot.
+        final var temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (final var channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * <p>
+     * Applies the records of the current journal segment from {@link #getJournalOffset()}
+     * on.
+     * </p>
+     *
+     * <p>
+     * Replaying stops at the end of the file or at the first incomplete or corrupted
+     * record, e.g., one which has been torn by a crash.
+     * </p>
+     *
+     * @param journalPath The path of the journal file.
+     * @throws IOException When the journal cannot be read.
+     */
+    public void replay(final Path journalPath) throws IOException {
+        final var path = Journal.segmentPath(journalPath, this.journalGeneration);
+        if (!Files.exists(path)) {
+            return;
+        }
+        final var checksum = new CRC32();
+        final var types = Journal.RecordType.values();
+        final var buffer = ByteBuffer.allocateDirect(4096 * Journal.RECORD_SIZE);
+        try (final var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.position(this.journalOffset);
+            while (channel.read(buffer) > 0 || buffer.position() > 0) {
+                buffer.flip();
+                if (buffer.remaining() < Journal.RECORD_SIZE) {
+                    // There is only an incomplete record left.
+                    return;
+                }
+                while (buffer.remaining() >= Journal.RECORD_SIZE) {
+                    final var start = buffer.position();
+                    checksum.reset();
+                    checksum.update(buffer.duplicate().limit(start + Journal.RECORD_SIZE - 4));
+                    if (buffer.getInt(start + Journal.RECORD_SIZE - 4) != (int) checksum.getValue()) {
+                        return;
+                    }
+                    final var type = buffer.get();
+                    final var ticketId = buffer.getInt();
+                    final var customer = new CustomerId(new UUID(buffer.getLong(), buffer.getLong()));
+                    final var timestamp = buffer.getLong();
+                    buffer.getInt();
+                    if (type < 0 || type >= types.length) {
+                        return;
+                    }
+                    this.apply(types[type], ticketId, customer, timestamp);
+                    this.journalOffset += Journal.RECORD_SIZE;
+                }
+                buffer.compact();
+            }
+        }
+    }
+
+    /**
+     * Applies a single record of the journal.
+     */
+    private void apply(final Journal.RecordType type, final int ticketId, final CustomerId customer,
+            final long timestamp) {
+        if (ticketId < 0 || ticketId >= this.numTickets) {
+            return;
+        }
+        switch (type) {
+            case RESERVE:
+                // the timestamp of a reserve record is the deadline of the hold
+                this.holds.put(ticketId, new Hold(customer, timestamp));
+                break;
+            case SELL:
+                this.holds.remove(ticketId);
+                this.sold.set(ticketId);
+                break;
+            case ABORT:
+                this.holds.remove(ticketId);
+                break;
+        }
+    }
+
+    /**
+     * Returns the number of tickets covered by the image.
+     *
+     * @return The number of tickets covered by the image.
+     */
+    public int getNumTickets() {
+        return this.numTickets;
+    }
+
+    /**
+     * Returns whether a ticket has been sold.
+     *
+     * @param ticketId The id of the ticket.
+     * @return Whether the ticket has been sold.
+     */
+    public boolean isSold(final int ticketId) {
+        return this.sold.get(ticketId);
+    }
+
+    /**
+     * Returns the outstanding reservation of a ticket.
+     *
+     * @param ticketId The id of the ticket.
+     * @return The reservation or {@code null} if the ticket is not reserved.
+     */
+    public Hold getHold(final int ticketId) {
+        return this.holds.get(ticketId);
+    }
+
+    /**
+     * Replays the journal up to its last segment. The flusher only opens a segment once
+     * all records have been written to the previous one, so the previous segment is
+     * complete whenever its successor exists.
+     *
+     * @param journalPath The path of the journal file.
+     * @throws IOException When the journal cannot be read.
+     */
+    public void replayAll(final Path journalPath) throws IOException {
+        this.replay(journalPath);
+        while (Files.exists(Journal.segmentPath(journalPath, this.journalGeneration + 1))) {
+            // pick up the records written since the previous replay of the segment
+            this.replay(journalPath);
+            this.journalGeneration++;
+            this.journalOffset = 0;
+            this.replay(journalPath);
+        }
+    }
+
+    /**
+     * Returns the generation of the journal segment which is applied next.
+     *
+     * @return The generation of the journal segment which is applied next.
+     */
+    public long getJournalGeneration() {
+        return this.journalGeneration;
+    }
+
+    /**
+     * Returns the offset up to which the current journal segment has been applied.
+     *
+     * @return The offset up to which the current journal segment has been applied.
+     */
+    public long getJournalOffset() {
+        return this.journalOffset;
+    }
+}
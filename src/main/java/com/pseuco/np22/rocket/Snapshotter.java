@@ -0,0 +1,134 @@
+package com.pseuco.np22.rocket;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.pseuco.np22.Config;
+
+/**
+ * <p>
+ * Recovers the ticket states on startup and periodically takes {@link Snapshot}s.
+ * </p>
+ *
+ * <p>
+ * On construction, the latest snapshot is loaded and the tail of the {@link Journal} is
+ * replayed on top of it. Afterwards, the snapshotter keeps its image up to date by
+ * replaying the journal in the background and writes it to disk after every round, such
+ * that a restart only has to replay the records since the last snapshot. The journal
+ * segments covered by a written snapshot are deleted, so the journal does not grow
+ * without bound.
+ * </p>
+ */
+public class Snapshotter implements Runnable {
+    /**
+     * The path of the journal file or {@code null} if journaling is disabled.
+     */
+    private final Path journalPath;
+
+    /**
+     * The path of the snapshot file.
+     */
+    private final Path snapshotPath;
+
+    /**
+     * The interval in which snapshots are taken in seconds.
+     */
+    private final int interval;
+
+    /**
+     * The image of the ticket states.
+     */
+    private final Snapshot image;
+
+    /**
+     * Constructs a new {@link Snapshotter} and recovers the ticket states.
+     *
+     * @param config The configuration of the system.
+     */
+    public Snapshotter(final Config config) {
+        this.journalPath = config.getJournalPath();
+        this.interval = config.getSnapshotInterval();
+        if (this.journalPath == null) {
+            this.snapshotPath = null;
+            this.image = Snapshot.empty(config.getNumTickets());
+            return;
+        }
+        this.snapshotPath = this.journalPath.resolveSibling(this.journalPath.getFileName() + ".snapshot");
+        try {
+            if (Files.exists(this.snapshotPath)) {
+                this.image = Snapshot.load(this.snapshotPath, config.getNumTickets());
+            } else {
+                this.image = Snapshot.empty(config.getNumTickets());
+            }
+            this.image.replayAll(this.journalPath);
+            final var segment = Journal.segmentPath(this.journalPath, this.image.getJournalGeneration());
+            if (Files.exists(segment)) {
+                // Cut off a record torn by a crash so that new records are appended after the
+                // last valid one.
+                try (final var channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                    channel.truncate(this.image.getJournalOffset());
+                }
+            }
+        } catch (IOException error) {
+            throw new UncheckedIOException("Unable to recover from the journal!", error);
+        }
+    }
+
+    /**
+     * Returns whether snapshots are enabled.
+     *
+     * @return Whether snapshots are enabled.
+     */
+    public boolean isEnabled() {
+        return this.journalPath != null;
+    }
+
+    /**
+     * <p>
+     * Returns the recovered image of the ticket states.
+     * </p>
+     *
+     * <p>
+     * ⚠️ The image is updated by the snapshotter thread once it has been started.
+     * </p>
+     *
+     * @return The recovered image of the ticket states.
+     */
+    public Snapshot getImage() {
+        return this.image;
+    }
+
+    /**
+     * Deletes the journal segments preceding the one of the written snapshot.
+     */
+    private void deleteCoveredSegments() throws IOException {
+        var generation = this.image.getJournalGeneration() - 1;
+        while (generation >= 0 && Files.deleteIfExists(Journal.segmentPath(this.journalPath, generation))) {
+            generation--;
+        }
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                Thread.sleep(this.interval * 1000L);
+                // Records which are not completely written yet are picked up in the next round.
+                this.image.replayAll(this.journalPath);
+                this.image.write(this.snapshotPath);
+                this.deleteCoveredSegments();
+            } catch (IOException error) {
+                // The journal is still complete, we just have to replay more on a restart.
+                System.err.println("Warning: Unable to take a snapshot.");
+                error.printStackTrace();
+            } catch (InterruptedException error) {
+                error.printStackTrace();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package com.pseuco.np22.rocket;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntSupplier;
+
+/**
+ * <p>
+ * The {@link TicketAuthority} leases tickets of its {@link Database} to other cluster
+ * nodes.
+ * </p>
+ *
+ * <p>
+ * Every node holds a lease on the tickets it allocated. The lease is renewed by every
+ * request of the node. Once a lease expires, e.g., because the node crashed, all its
+ * tickets which have not been sold are returned to the database. A sale is only valid if
+ * it is confirmed by the authority while the node still holds the ticket, hence, a ticket
+ * returned from an expired lease is never sold twice.
+ * </p>
+ *
+ * <p>
+ * The authority also keeps the registry of the cluster. Nodes announce themselves with
+ * {@link NodeProtocol#REGISTER} and learn about all other nodes with a living lease.
+ * </p>
+ */
+public class TicketAuthority implements Runnable, NodeServer.Handler {
+    /**
+     * The lease of a node.
+     */
+    private static class Lease {
+        /**
+         * The tickets held by the node by id.
+         */
+        private final Map<Integer, Ticket> held = new HashMap<>();
+        /**
+         * The system time at which the lease expires.
+         */
+        private long expiresAt;
+        /**
+         * The registry entry of the node, {@code null} if the node did not register.
+         */
+        private NodeProtocol.NodeInfo info = null;
+    }
+
+    /**
+     * The database whose tickets are leased.
+     */
+    private final Database database;
+
+    /**
+     * Counts the tickets leased to and returned from other nodes.
+     */
+    private final Gossip gossip;
+
+    /**
+     * The number of active servers of the authority node.
+     */
+    private final IntSupplier numServers;
+
+    /**
+     * The server answering the requests of the nodes.
+     */
+    private final NodeServer server;
+
+    /**
+     * The time after which the lease of a silent node expires in milliseconds.
+     */
+    private final int leaseTime;
+
+    /**
+     * The leases by node id.
+     */
+    private final Map<UUID, Lease> leases = new HashMap<>();
+
+    /**
+     * Lock protecting the leases.
+     */
+    private final ReentrantLock leaseLock = new ReentrantLock();
+
+    /**
+     * Constructs a new {@link TicketAuthority}.
+     *
+     * @param coordinator The {@link Coordinator} of the authority node.
+     * @throws IOException When the authority port cannot be bound.
+     */
+    public TicketAuthority(final Coordinator coordinator) throws IOException {
+        this(coordinator.getDatabase(), new InetSocketAddress(coordinator.getConfig().getAuthorityHost(),
+                coordinator.getConfig().getAuthorityPort()), coordinator.getConfig().getLeaseTime(),
+                coordinator.getGossip(), coordinator::getNumOfServers);
+    }
+
+    /**
+     * Constructs a new {@link TicketAuthority} and binds it to the given address.
+     *
+     * @param database   The database whose tickets are leased.
+     * @param address    The address to listen on.
+     * @param leaseTime  The time after which the lease of a silent node expires in
+     *                   milliseconds.
+     * @param gossip     The gossip of the authority node, which learns the registry from us.
+     * @param numServers The number of active servers of the authority node.
+     * @throws IOException When the address cannot be bound.
+     */
+    public TicketAuthority(final Database database, final InetSocketAddress address, final int leaseTime,
+            final Gossip gossip, final IntSupplier numServers) throws IOException {
+        this.database = database;
+        this.leaseTime = leaseTime;
+        this.gossip = gossip;
+        this.numServers = numServers;
+        gossip.setRegistry(this::getRegistry);
+        this.server = new NodeServer(address, this);
+    }
+
+    /**
+     * Returns the port the authority listens on.
+     *
+     * @return The port the authority listens on.
+     */
+    public int getPort() {
+        return this.server.getPort();
+    }
+
+    /**
+     * Returns the registry of the cluster.
+     *
+     * @return The authority node and all nodes with a living lease which registered.
+     */
+    public List<NodeProtocol.NodeInfo> getRegistry() {
+        final List<NodeProtocol.NodeInfo> registry = new ArrayList<>();
+        registry.add(this.gossip.getInfo(this.numServers.getAsInt()));
+        leaseLock.lock();
+        try {
+            this.leases.values().forEach(lease -> {
+                if (lease.info != null) {
+                    registry.add(lease.info);
+                }
+            });
+        } finally {
+            leaseLock.unlock();
+        }
+        return registry;
+    }
+
+    /**
+     * Returns the lease of a node and renews it, creating a new lease if necessary.
+     */
+    private Lease renew(final UUID node) {
+        final var lease = this.leases.computeIfAbsent(node, id -> new Lease());
+        lease.expiresAt = System.currentTimeMillis() + this.leaseTime;
+        return lease;
+    }
+
+    /**
+     * Returns the unsold tickets of expired leases to the database.
+     */
+    private void expireLeases() {
+        final List<Ticket> expired = new ArrayList<>();
+        leaseLock.lock();
+        try {
+            final var now = System.currentTimeMillis();
+            this.leases.values().removeIf(lease -> {
+                if (lease.expiresAt < now) {
+                    expired.addAll(lease.held.values());
+                    return true;
+                }
+                return false;
+            });
+        } finally {
+            leaseLock.unlock();
+        }
+        if (!expired.isEmpty()) {
+            this.database.deallocate(expired);
+            this.gossip.countAvailable(expired.size());
+        }
+    }
+
+    /**
+     * Returns the id of the node of a session, failing if the node did not say hello.
+     */
+    private static UUID nodeOf(final NodeServer.Session session) {
+        final var node = (UUID) session.getAttachment();
+        if (node == null) {
+            throw new IllegalStateException("Expected HELLO from node.");
+        }
+        return node;
+    }
+
+    @Override
+    public void handle(final NodeServer.Session session, final byte type, final ByteBuffer request,
+            final ByteBuffer response) {
+        switch (type) {
+            case NodeProtocol.HELLO: {
+                final var node = NodeProtocol.getUUID(request);
+                session.setAttachment(node);
+                leaseLock.lock();
+                try {
+                    this.renew(node);
+                } finally {
+                    leaseLock.unlock();
+                }
+                response.putInt(this.leaseTime);
+                break;
+            }
+            case NodeProtocol.ALLOCATE: {
+                final var node = nodeOf(session);
+                final var tickets = this.database.allocate(Math.min(request.getInt(), NodeProtocol.MAX_TICKETS));
+                leaseLock.lock();
+                try {
+                    final var lease = this.renew(node);
+                    tickets.forEach(ticket -> lease.held.put(ticket.getId(), ticket));
+                } finally {
+                    leaseLock.unlock();
+                }
+                this.gossip.countTaken(tickets.size());
+                response.putInt(tickets.size());
+                for (final var ticket : tickets) {
+                    response.putInt(ticket.getId());
+                }
+                break;
+            }
+            case NodeProtocol.DEALLOCATE: {
+                final var node = nodeOf(session);
+                final List<Ticket> returned = new ArrayList<>();
+                leaseLock.lock();
+                try {
+                    final var lease = this.renew(node);
+                    final var count = request.getInt();
+                    for (int i = 0; i < count; i++) {
+                        // Tickets of an expired lease have already been returned.
+                        final var ticket = lease.held.remove(request.getInt());
+                        if (ticket != null) {
+                            returned.add(ticket);
+                        }
+                    }
+                } finally {
+                    leaseLock.unlock();
+                }
+                this.database.deallocate(returned);
+                this.gossip.countAvailable(returned.size());
+                break;
+            }
+            case NodeProtocol.SELL: {
+                final var node = nodeOf(session);
+                final List<Integer> ids = new ArrayList<>();
+                final List<Ticket> sold = new ArrayList<>();
+                leaseLock.lock();
+                try {
+                    final var held = this.renew(node).held;
+                    final var count = request.getInt();
+                    for (int i = 0; i < count; i++) {
+                        ids.add(request.getInt());
+                    }
+                    // Sell all tickets or none of them, such that a group is never sold partially.
+                    if (!ids.isEmpty() && held.keySet().containsAll(ids)) {
+                        ids.forEach(id -> sold.add(held.remove(id)));
+                    }
+                } finally {
+                    leaseLock.unlock();
+                }
+                // Keep the state of the tickets in the database up to date.
+                sold.forEach(ticket -> {
+                    ticket.reserve();
+                    ticket.sell();
+                });
+                response.put((byte) (sold.isEmpty() ? 0 : 1));
+                break;
+            }
+            case NodeProtocol.AVAILABLE: {
+                final var node = nodeOf(session);
+                leaseLock.lock();
+                try {
+                    this.renew(node);
+                } finally {
+                    leaseLock.unlock();
+                }
+                response.putInt(this.database.getNumAvailable());
+                break;
+            }
+            case NodeProtocol.RENEW: {
+                final var node = nodeOf(session);
+                leaseLock.lock();
+                try {
+                    this.renew(node);
+                } finally {
+                    leaseLock.unlock();
+                }
+                break;
+            }
+            case NodeProtocol.REGISTER: {
+                final var node = nodeOf(session);
+                final var info = NodeProtocol.NodeInfo.decode(request);
+                leaseLock.lock();
+                try {
+                    this.renew(node).info = info;
+                } finally {
+                    leaseLock.unlock();
+                }
+                final var registry = this.getRegistry();
+                response.putInt(registry.size());
+                registry.forEach(entry -> entry.encode(response));
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown frame type " + type + ".");
+        }
+    }
+
+    @Override
+    public void run() {
+        // Return the tickets of crashed nodes in the background.
+        final var expirer = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(Math.max(this.leaseTime / 4, 1));
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                    return;
+                }
+                this.expireLeases();
+            }
+        });
+        expirer.setDaemon(true);
+        expirer.start();
+        this.server.run();
+    }
+}
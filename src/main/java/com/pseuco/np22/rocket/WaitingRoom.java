@@ -0,0 +1,243 @@
+package com.pseuco.np22.rocket;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.pseuco.np22.request.CustomerId;
+import com.pseuco.np22.request.Request;
+
+/**
+ * <p>
+ * A virtual waiting room in front of the reservations.
+ * </p>
+ *
+ * <p>
+ * Customers who want to reserve tickets while others are waiting are put in line and
+ * receive their position instead of reaching a server. They poll their position with the
+ * status request until they are admitted and may send their reservation again.
+ * </p>
+ *
+ * <p>
+ * The waiting room admits customers with every tick: at most the configured admission
+ * rate per active server, and never more than the tickets still unreserved minus the
+ * customers admitted already. Hence, the servers are kept at the load they can handle
+ * and customers do not wait for tickets which are gone anyway. Customers arriving while
+ * nobody is waiting are admitted right away as long as the admissions of the current tick
+ * are not used up. An admission is used up once the next reservation of the customer has
+ * reached a server, so a reservation rejected by the rate limiter or shed by the balancer
+ * keeps it, and it expires after the admission window.
+ * </p>
+ */
+public class WaitingRoom implements Runnable {
+    /**
+     * The number of admission rounds per second.
+     */
+    private static final int TICKS_PER_SECOND = 10;
+
+    /**
+     * The line of an event.
+     */
+    private static class Line {
+        /**
+         * The event of the line.
+         */
+        private final Event event;
+
+        /**
+         * The waiting customers in the order they arrived.
+         */
+        private final ConcurrentLinkedQueue<CustomerId> waiting = new ConcurrentLinkedQueue<>();
+
+        /**
+         * The place in line of every waiting customer.
+         */
+        private final ConcurrentHashMap<CustomerId, Long> places = new ConcurrentHashMap<>();
+
+        /**
+         * The place in line handed out next.
+         */
+        private final AtomicLong nextPlace = new AtomicLong();
+
+        /**
+         * The number of customers which have left the line.
+         */
+        private final AtomicLong numLeft = new AtomicLong();
+
+        /**
+         * The admitted customers with the system time of their admission.
+         */
+        private final ConcurrentHashMap<CustomerId, Long> admitted = new ConcurrentHashMap<>();
+
+        /**
+         * The admissions left in the current tick.
+         */
+        private final AtomicInteger budget = new AtomicInteger();
+
+        private Line(final Event event) {
+            this.event = event;
+        }
+
+        /**
+         * Returns the position of a waiting customer, starting at {@code 1}.
+         */
+        private int positionOf(final long place) {
+            return (int) Math.max(1, place - this.numLeft.get() + 1);
+        }
+    }
+
+    /**
+     * The {@link Coordinator} of the ticket sales system.
+     */
+    private final Coordinator coordinator;
+
+    /**
+     * The lines by event id.
+     */
+    private final Map<String, Line> lines = new HashMap<>();
+
+    /**
+     * Constructs a new {@link WaitingRoom}.
+     *
+     * @param coordinator The {@link Coordinator} of the ticket sales system.
+     */
+    public WaitingRoom(final Coordinator coordinator) {
+        this.coordinator = coordinator;
+        for (final var event : coordinator.getEvents()) {
+            this.lines.put(event.getId(), new Line(event));
+        }
+    }
+
+    /**
+     * Indicates whether reservations have to pass the waiting room.
+     *
+     * @return Whether the waiting room is enabled.
+     */
+    public boolean isEnabled() {
+        return this.coordinator.getConfig().isWaitingRoom();
+    }
+
+    /**
+     * Checks whether the customer of a reservation request has been admitted and puts the
+     * customer in line otherwise. The admission is kept until {@link #enter} is called.
+     *
+     * @param request The reservation request.
+     * @return Whether the request may be handed over to a server, otherwise it has been
+     *         answered with the position of the customer.
+     */
+    public boolean admit(final Request request) {
+        final var line = this.lines.get(request.getEventId().orElse(Event.DEFAULT_ID));
+        if (line == null) {
+            // the server tells the client that the event does not exist
+            return true;
+        }
+        final var customer = request.getCustomerId();
+        if (line.admitted.containsKey(customer)) {
+            return true;
+        }
+        final var place = line.places.get(customer);
+        if (place != null) {
+            request.respondWithQueuePosition(line.positionOf(place));
+            return false;
+        }
+        // Nobody is waiting, so the customer may pass if there are admissions left.
+        if (line.waiting.isEmpty() && line.budget.getAndUpdate(budget -> Math.max(0, budget - 1)) > 0) {
+            line.admitted.put(customer, System.currentTimeMillis());
+            return true;
+        }
+        // Concurrent requests of the same customer must not put the customer in line twice,
+        // so the place is only handed out and the customer only enqueued by one of them.
+        final var newPlace = line.places.computeIfAbsent(customer, waiting -> {
+            final var next = line.nextPlace.getAndIncrement();
+            line.waiting.add(waiting);
+            return next;
+        });
+        request.respondWithQueuePosition(line.positionOf(newPlace));
+        return false;
+    }
+
+    /**
+     * Uses up the admission of the customer of a reservation request once the request has
+     * reached a server.
+     *
+     * @param request The reservation request.
+     */
+    public void enter(final Request request) {
+        final var line = this.lines.get(request.getEventId().orElse(Event.DEFAULT_ID));
+        if (line != null) {
+            line.admitted.remove(request.getCustomerId());
+        }
+    }
+
+    /**
+     * Answers the status request of a customer with its position, {@code 0} if the customer
+     * has been admitted.
+     *
+     * @param request The status request.
+     */
+    public void respondWithStatus(final Request request) {
+        final var line = this.lines.get(request.getEventId().orElse(Event.DEFAULT_ID));
+        if (line == null) {
+            request.respondWithError("Unknown event!");
+            return;
+        }
+        final var customer = request.getCustomerId();
+        if (line.admitted.containsKey(customer)) {
+            request.respondWithInt(0);
+            return;
+        }
+        final var place = line.places.get(customer);
+        if (place == null) {
+            request.respondWithError("Not in the waiting room!");
+        } else {
+            request.respondWithQueuePosition(line.positionOf(place));
+        }
+    }
+
+    /**
+     * Admits the next customers of a line.
+     */
+    private void tick(final Line line, final long now) {
+        final var config = this.coordinator.getConfig();
+        // Admissions expire such that customers who never come back do not block the line.
+        line.admitted.values().removeIf(admittedAt -> now - admittedAt > config.getAdmissionWindow());
+        final var event = line.event;
+        final var gossip = event.getGossip();
+        final long unreserved = gossip.isEnabled() ? gossip.getNumAvailable() : gossip.getLocalNumAvailable();
+        final var perTick = Math.max(1, config.getAdmissionRate() * this.coordinator.getNumOfServers()
+                / TICKS_PER_SECOND);
+        // Once the event is sold out, the balancer answers the reservations right away.
+        var budget = event.isSoldOut() ? perTick
+                : (int) Math.max(0, Math.min(perTick, unreserved - line.admitted.size()));
+        while (budget > 0) {
+            final var customer = line.waiting.poll();
+            if (customer == null) {
+                break;
+            }
+            line.numLeft.incrementAndGet();
+            line.places.remove(customer);
+            line.admitted.put(customer, now);
+            budget--;
+        }
+        line.budget.set(budget);
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                Thread.sleep(1000 / TICKS_PER_SECOND);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                return;
+            }
+            final var now = System.currentTimeMillis();
+            for (final var line : this.lines.values()) {
+                this.tick(line, now);
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.pseuco.np22.rocket;
+
+import java.util.ArrayList;
+
+import com.pseuco.np22.rocket.Mailbox.SendResult;
+import com.pseuco.np22.rocket.RingBuffer.WaitStrategy;
+
+/**
+ * Compares the throughput of the {@link Mailbox} with the {@link RingMailbox} and its wait
+ * strategies. Not part of the unit tests, run it with {@code ./gradlew benchmark}.
+ */
+public class RingMailboxBenchmark {
+    /**
+     * Sends messages from several threads to a single receiver and returns the throughput
+     * in messages per second.
+     */
+    private static long measure(final Mailbox<Integer> mailbox, final int numSenders, final int numMessages)
+            throws InterruptedException {
+        final var senders = new ArrayList<Thread>();
+        for (int i = 0; i < numSenders; i++) {
+            senders.add(new Thread(() -> {
+                for (int message = 0; message < numMessages; message++) {
+                    while (mailbox.sendLowPriority(message) != SendResult.SENT) {
+                        Thread.onSpinWait();
+                    }
+                }
+            }));
+        }
+        final var start = System.nanoTime();
+        senders.forEach(Thread::start);
+        for (long received = 0; received < (long) numSenders * numMessages; received++) {
+            mailbox.recv();
+        }
+        final var elapsed = System.nanoTime() - start;
+        for (final var sender : senders) {
+            sender.join();
+        }
+        return (long) numSenders * numMessages * 1000000000L / Math.max(1, elapsed);
+    }
+
+    public static void main(final String[] args) throws InterruptedException {
+        final var numSenders = 4;
+        final var numMessages = 200000;
+        final var capacity = 1024;
+        // warm up both transports before measuring
+        measure(new Mailbox<>(capacity), numSenders, numMessages / 10);
+        measure(new RingMailbox<>(capacity, WaitStrategy.of("yield")), numSenders, numMessages / 10);
+
+        System.out.printf("mailbox: %d messages/s%n", measure(new Mailbox<>(capacity), numSenders, numMessages));
+        for (final var strategy : new String[] { "spin", "yield", "park" }) {
+            final var mailbox = new RingMailbox<Integer>(capacity, WaitStrategy.of(strategy));
+            System.out.printf("ring (%s): %d messages/s%n", strategy, measure(mailbox, numSenders, numMessages));
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.pseuco.np22.rocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestFreeExtents {
+    @Test(timeout = 10000)
+    public void testFindRun() {
+        final var extents = new FreeExtents(100);
+        assertEquals(-1, extents.findRun(1));
+
+        extents.markFree(0, 100);
+        assertEquals(100, extents.getNumFree());
+        assertEquals(0, extents.findRun(100));
+
+        // Fragment the ids into the free runs [10, 13), [20, 30) and [50, 100).
+        extents.markTaken(0, 10);
+        extents.markTaken(13, 20);
+        extents.markTaken(30, 50);
+        assertEquals(63, extents.getNumFree());
+        assertEquals(10, extents.findRun(3));
+        assertEquals(20, extents.findRun(4));
+        assertEquals(50, extents.findRun(11));
+        assertEquals(-1, extents.findRun(51));
+
+        // Runs crossing the middle of the tree are found as well.
+        extents.markFree(30, 50);
+        assertEquals(20, extents.findRun(80));
+        assertTrue(extents.isFree(49));
+        assertFalse(extents.isFree(15));
+    }
+
+    @Test(timeout = 10000)
+    public void testDatabaseBlocks() {
+        final var database = new Database();
+        database.deallocate(Ticket.generateStack(20));
+        assertEquals(20, database.getNumAvailable());
+
+        // Allocations are leased as contiguous ranges.
+        final var first = database.allocate(5);
+        for (int i = 1; i < first.size(); i++) {
+            assertEquals(first.get(i - 1).getId() + 1, first.get(i).getId());
+        }
+
+        database.deallocate(first.subList(1, 2));
+        final var block = database.allocateBlock(10);
+        assertEquals(10, block.size());
+        assertEquals(block.get(0).getId() + 9, block.get(9).getId());
+        assertTrue(database.allocateBlock(6).isEmpty());
+        assertEquals(6, database.allocate(6).size());
+    }
+}
@@ -3,6 +3,8 @@ package com.pseuco.np22.rocket;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 
+import com.pseuco.np22.rocket.Mailbox.SendResult;
+
 import org.junit.Test;
 
 public class TestMailbox {
@@ -35,4 +37,75 @@ public class TestMailbox {
 
         assertNull(mailbox.tryRecv());
     }
+
+    @Test(timeout = 10000)
+    public void testCapacity() throws InterruptedException {
+        final var mailbox = new Mailbox<String>(2);
+
+        assertEquals(SendResult.SENT, mailbox.sendLowPriority("1. Low"));
+        assertEquals(SendResult.SENT, mailbox.sendLowPriority("2. Low"));
+        assertEquals(SendResult.FULL, mailbox.sendLowPriority("3. Low"));
+        // High priority messages are always admitted.
+        assertEquals(true, mailbox.sendHighPriority("1. High"));
+
+        assertEquals("1. High", mailbox.recv());
+        assertEquals("1. Low", mailbox.recv());
+        assertEquals(SendResult.SENT, mailbox.sendLowPriority("3. Low"));
+
+        mailbox.closingMailBox();
+        assertEquals(SendResult.CLOSED, mailbox.sendLowPriority("4. Low"));
+    }
+
+    /**
+     * A message with high priority coalesced by its key.
+     */
+    private static class Estimate implements Mailbox.Coalescing {
+        private final String key;
+        private final int value;
+
+        private Estimate(final String key, final int value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public Object getCoalescingKey() {
+            return this.key;
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testCoalescing() throws InterruptedException {
+        final var mailbox = new Mailbox<Object>();
+
+        mailbox.sendHighPriority(new Estimate("a", 1));
+        mailbox.sendHighPriority("High");
+        mailbox.sendHighPriority(new Estimate("b", 1));
+        mailbox.sendHighPriority(new Estimate("a", 2));
+        mailbox.sendHighPriority(new Estimate("a", 3));
+
+        // The latest estimate takes the place of the first one.
+        assertEquals(3, ((Estimate) mailbox.recv()).value);
+        assertEquals("High", mailbox.recv());
+        assertEquals(1, ((Estimate) mailbox.recv()).value);
+        assertNull(mailbox.tryRecv());
+
+        // Received messages are not replaced.
+        mailbox.sendHighPriority(new Estimate("a", 4));
+        assertEquals(4, ((Estimate) mailbox.recv()).value);
+    }
+
+    @Test(timeout = 10000)
+    public void testAwaitMessage() throws InterruptedException {
+        final var mailbox = new Mailbox<String>();
+
+        final var sender = new Thread(() -> mailbox.sendLowPriority("Low"));
+        sender.start();
+        mailbox.awaitMessage();
+        sender.join();
+
+        // The message is still in the mailbox.
+        assertEquals("Low", mailbox.tryRecv());
+        assertNull(mailbox.tryRecv());
+    }
 }
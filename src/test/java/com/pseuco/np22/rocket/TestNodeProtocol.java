@@ -0,0 +1,152 @@
+package com.pseuco.np22.rocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs an authority and several nodes on the loopback interface.
+ */
+public class TestNodeProtocol {
+    private static final int NUM_TICKETS = 1000;
+    private static final int LEASE_TIME = 300;
+
+    private Database database;
+    private TicketAuthority authority;
+    private List<RemoteDatabase> nodes;
+    private List<Gossip> gossips;
+
+    @Before
+    public void setUp() throws IOException {
+        this.database = new Database();
+        this.database.deallocate(Ticket.generateStack(NUM_TICKETS));
+        this.gossips = new ArrayList<>();
+        final var gossip = new Gossip(new InetSocketAddress("127.0.0.1", 0));
+        gossip.countAvailable(NUM_TICKETS);
+        this.gossips.add(gossip);
+        this.authority = new TicketAuthority(this.database, new InetSocketAddress("127.0.0.1", 0), LEASE_TIME,
+                gossip, () -> 1);
+        final var thread = new Thread(this.authority);
+        thread.setDaemon(true);
+        thread.start();
+        final var address = new InetSocketAddress("127.0.0.1", this.authority.getPort());
+        this.nodes = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            final var nodeGossip = new Gossip(new InetSocketAddress("127.0.0.1", 0));
+            this.gossips.add(nodeGossip);
+            this.nodes.add(new RemoteDatabase(address, nodeGossip, () -> 1));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        this.nodes.forEach(RemoteDatabase::close);
+    }
+
+    @Test(timeout = 10000)
+    public void testConcurrentAllocations() throws InterruptedException {
+        final Set<Integer> ids = new HashSet<>();
+        final List<Thread> threads = new ArrayList<>();
+        for (final var node : this.nodes) {
+            for (int i = 0; i < 4; i++) {
+                // Several servers per node share a single pipelined connection.
+                threads.add(new Thread(() -> {
+                    while (true) {
+                        final var tickets = node.allocate(7);
+                        if (tickets.isEmpty()) {
+                            return;
+                        }
+                        synchronized (ids) {
+                            tickets.forEach(ticket -> assertTrue(ids.add(ticket.getId())));
+                        }
+                    }
+                }));
+            }
+        }
+        threads.forEach(Thread::start);
+        for (final var thread : threads) {
+            thread.join();
+        }
+        assertEquals(NUM_TICKETS, ids.size());
+        assertEquals(0, this.nodes.get(0).getNumAvailable());
+    }
+
+    @Test(timeout = 10000)
+    public void testDeallocateAndSell() {
+        final var first = this.nodes.get(0);
+        final var second = this.nodes.get(1);
+        final var tickets = first.allocate(NUM_TICKETS);
+        assertEquals(NUM_TICKETS, tickets.size());
+        assertFalse(second.confirmSale(tickets.get(0).getId()));
+        assertTrue(first.confirmSale(tickets.get(0).getId()));
+        assertFalse(first.confirmSale(tickets.get(0).getId()));
+
+        first.deallocate(tickets.subList(1, tickets.size()));
+        assertEquals(NUM_TICKETS - 1, second.getNumAvailable());
+        assertEquals(NUM_TICKETS - 1, second.allocate(NUM_TICKETS - 1).size());
+    }
+
+    @Test(timeout = 10000)
+    public void testGroupSale() {
+        final var node = this.nodes.get(0);
+        final List<Integer> ids = new ArrayList<>();
+        node.allocate(4).forEach(ticket -> ids.add(ticket.getId()));
+        assertTrue(node.confirmSales(ids.subList(0, 2)));
+        // A group with a ticket which is no longer ours is not sold partially.
+        assertFalse(node.confirmSales(ids.subList(1, 4)));
+        assertTrue(node.confirmSales(ids.subList(2, 4)));
+    }
+
+    @Test(timeout = 10000)
+    public void testLeaseExpiry() throws InterruptedException {
+        final var crashed = this.nodes.get(2);
+        assertEquals(100, crashed.allocate(100).size());
+        assertEquals(NUM_TICKETS - 100, this.nodes.get(0).getNumAvailable());
+        crashed.close();
+        Thread.sleep(3 * LEASE_TIME);
+        assertEquals(NUM_TICKETS, this.nodes.get(0).getNumAvailable());
+    }
+
+    @Test(timeout = 10000)
+    public void testRegistry() {
+        this.nodes.forEach(RemoteDatabase::register);
+        this.nodes.forEach(RemoteDatabase::register);
+        for (final var node : this.nodes) {
+            final Set<Object> registered = new HashSet<>();
+            node.getRegistry().forEach(entry -> registered.add(entry.getId()));
+            this.nodes.forEach(other -> assertTrue(registered.contains(other.getNode())));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testGossipConvergence() throws InterruptedException {
+        this.gossips.forEach(gossip -> {
+            final var thread = new Thread(gossip);
+            thread.setDaemon(true);
+            thread.start();
+        });
+        // Every node takes some tickets and reserves a few of them.
+        for (int i = 0; i < this.nodes.size(); i++) {
+            assertEquals(100, this.nodes.get(i).allocate(100).size());
+            this.gossips.get(i + 1).countTaken(10 * (i + 1));
+        }
+        this.nodes.forEach(RemoteDatabase::register);
+        final var expected = NUM_TICKETS - 10 - 20 - 30;
+        for (final var gossip : this.gossips) {
+            while (gossip.getNumAvailable() != expected) {
+                Thread.sleep(50);
+            }
+        }
+    }
+}
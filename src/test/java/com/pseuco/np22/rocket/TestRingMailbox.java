@@ -0,0 +1,82 @@
+package com.pseuco.np22.rocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+
+import com.pseuco.np22.rocket.Mailbox.SendResult;
+import com.pseuco.np22.rocket.RingBuffer.WaitStrategy;
+
+import org.junit.Test;
+
+public class TestRingMailbox {
+    @Test(timeout = 10000)
+    public void testPriorities() throws InterruptedException {
+        final var mailbox = new RingMailbox<String>(0, WaitStrategy.of("park"));
+
+        mailbox.sendHighPriority("1. High");
+        mailbox.sendLowPriority("1. Low");
+        mailbox.sendHighPriority("2. High");
+        mailbox.sendLowPriority("2. Low");
+
+        assertEquals("1. High", mailbox.recv());
+        assertEquals("2. High", mailbox.recv());
+        assertEquals("1. Low", mailbox.recv());
+        assertEquals("2. Low", mailbox.recv());
+        assertNull(mailbox.tryRecv());
+    }
+
+    @Test(timeout = 10000)
+    public void testCapacity() throws InterruptedException {
+        final var mailbox = new RingMailbox<String>(2, WaitStrategy.of("spin"));
+
+        assertEquals(SendResult.SENT, mailbox.sendLowPriority("1. Low"));
+        assertEquals(SendResult.SENT, mailbox.sendLowPriority("2. Low"));
+        assertEquals(SendResult.FULL, mailbox.sendLowPriority("3. Low"));
+        // High priority messages are always admitted.
+        assertEquals(true, mailbox.sendHighPriority("1. High"));
+
+        assertEquals("1. High", mailbox.recv());
+        assertEquals("1. Low", mailbox.recv());
+        assertEquals(SendResult.SENT, mailbox.sendLowPriority("3. Low"));
+
+        mailbox.closingMailBox();
+        assertEquals(SendResult.CLOSED, mailbox.sendLowPriority("4. Low"));
+        assertEquals(false, mailbox.sendHighPriority("2. High"));
+        // Messages sent before closing are still delivered.
+        assertEquals("2. Low", mailbox.tryRecv());
+        assertEquals("3. Low", mailbox.recv());
+        assertNull(mailbox.recv());
+    }
+
+    @Test(timeout = 10000)
+    public void testExactlyOnce() throws InterruptedException {
+        final var numSenders = 4;
+        final var numMessages = 1000;
+        final var mailbox = new RingMailbox<Integer>(16, WaitStrategy.of("yield"));
+
+        final var senders = new ArrayList<Thread>();
+        for (int i = 0; i < numSenders; i++) {
+            senders.add(new Thread(() -> {
+                for (int message = 0; message < numMessages; message++) {
+                    while (mailbox.sendLowPriority(message) != SendResult.SENT) {
+                        Thread.onSpinWait();
+                    }
+                }
+            }));
+        }
+        senders.forEach(Thread::start);
+        var sum = 0L;
+        for (int received = 0; received < numSenders * numMessages; received++) {
+            sum += mailbox.recv();
+        }
+        for (final var sender : senders) {
+            sender.join();
+        }
+
+        // Every message has been received exactly once.
+        assertEquals((long) numSenders * numMessages * (numMessages - 1) / 2, sum);
+        assertNull(mailbox.tryRecv());
+    }
+}
@@ -0,0 +1,47 @@
+package com.pseuco.np22.rocket;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Map;
+
+import com.pseuco.np22.Config;
+import com.pseuco.np22.request.CustomerId;
+import com.pseuco.np22.request.ServerId;
+import com.pseuco.np22.rocket.Server.MsgAdoptReservations;
+import com.pseuco.np22.rocket.Server.MsgClearReservations;
+import com.pseuco.np22.rocket.Server.MsgShutdown;
+
+import org.junit.Test;
+
+/**
+ * Drains a server next to a single surviving server.
+ */
+public class TestServerDrain {
+    @Test(timeout = 10000)
+    public void testConcurrentDrains() throws InterruptedException {
+        final var coordinator = new Coordinator(new Config(100, 10) {
+        });
+        final var survivor = coordinator.getLiveServers().get(0);
+
+        // Another server draining at the same time handed its reservation over to the server
+        // before the server started to drain itself.
+        final var ticket = coordinator.getDatabase().allocate(1).get(0);
+        final var reservation = new Reservation(ticket, 100);
+        final var adoption = new MsgAdoptReservations(
+                Map.of(Event.DEFAULT_ID, Map.of(CustomerId.generate(), reservation)), Map.of());
+        final var server = new Server(ServerId.fromSlot(Integer.MAX_VALUE, 1, 0), coordinator);
+        server.getMailbox().sendHighPriority(new MsgShutdown());
+        server.getMailbox().sendHighPriority(adoption);
+        final var thread = new Thread(server);
+        thread.start();
+        thread.join();
+
+        // The reservation reached the survivor, which aborts it once it has expired.
+        Thread.sleep(200);
+        while (ticket.getState() == Ticket.State.RESERVED) {
+            survivor.getMailbox().sendHighPriority(new MsgClearReservations());
+            Thread.sleep(10);
+        }
+        assertEquals(Ticket.State.AVAILABLE, ticket.getState());
+    }
+}
@@ -204,6 +204,47 @@ impl FromStr for Reservation {
     }
 }
 
+pub enum GroupReservation {
+    SoldOut,
+    Reserved(Vec<u64>),
+}
+
+impl GroupReservation {
+    pub fn reserved(&self) -> Result<Vec<u64>> {
+        match self {
+            GroupReservation::SoldOut => Err(eyre::eyre!(
+                "Reservation failed when it shall have succeeded."
+            )),
+            GroupReservation::Reserved(ticket_ids) => Ok(ticket_ids.clone()),
+        }
+    }
+}
+
+impl FromStr for GroupReservation {
+    type Err = eyre::Error;
+
+    fn from_str(s: &str) -> Result<Self, Self::Err> {
+        match s.trim() {
+            "SOLD OUT" => Ok(Self::SoldOut),
+            s => Ok(Self::Reserved(parse_ticket_ids(s)?)),
+        }
+    }
+}
+
+fn parse_ticket_ids(s: &str) -> Result<Vec<u64>> {
+    Ok(s.split_ascii_whitespace()
+        .map(|ticket_id| ticket_id.parse())
+        .collect::<Result<Vec<_>, _>>()?)
+}
+
+fn format_ticket_ids(ticket_ids: &[u64]) -> String {
+    ticket_ids
+        .iter()
+        .map(|ticket_id| ticket_id.to_string())
+        .collect::<Vec<_>>()
+        .join(" ")
+}
+
 impl<'a> UserSession<'a> {
     fn request_options(&self) -> RequestOptions {
         RequestOptions {
@@ -259,6 +300,40 @@ impl<'a> UserSession<'a> {
                 .await?,
         ))
     }
+
+    pub async fn reserve_tickets(&mut self, number: usize) -> Result<ApiResponse<GroupReservation>> {
+        Ok(self.process_response(
+            self.api
+                .post("/api/reserve_tickets", &number, &self.request_options())
+                .await?,
+        ))
+    }
+
+    pub async fn abort_tickets(&mut self, ticket_ids: &[u64]) -> Result<ApiResponse<Vec<u64>>> {
+        let response = self
+            .api
+            .post::<_, String>(
+                "/api/abort_tickets",
+                &format_ticket_ids(ticket_ids),
+                &self.request_options(),
+            )
+            .await?;
+        self.process_response(response)
+            .map_response(|body| parse_ticket_ids(&body))
+    }
+
+    pub async fn buy_tickets(&mut self, ticket_ids: &[u64]) -> Result<ApiResponse<Vec<u64>>> {
+        let response = self
+            .api
+            .post::<_, String>(
+                "/api/buy_tickets",
+                &format_ticket_ids(ticket_ids),
+                &self.request_options(),
+            )
+            .await?;
+        self.process_response(response)
+            .map_response(|body| parse_ticket_ids(&body))
+    }
 }
 
 #[derive(Default)]
@@ -1,4 +1,4 @@
-use std::{sync::Arc, time::Duration};
+use std::{path::Path, sync::Arc, time::Duration};
 
 use eyre::Result;
 use tokio::{
@@ -56,6 +56,11 @@ impl<'cx> Launcher<'cx> {
         self
     }
 
+    pub fn with_journal(mut self, path: &Path) -> Self {
+        self.cmd.arg("-journal").arg(path);
+        self
+    }
+
     pub async fn launch(mut self) -> Result<RocketRef> {
         let mut child = self.cmd.spawn()?;
 
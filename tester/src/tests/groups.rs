@@ -0,0 +1,84 @@
+use eyre::Result;
+
+use crate::{api::GroupReservation, context::TestCtx};
+
+pub async fn test_buy_groups(ctx: &TestCtx) -> Result<()> {
+    const TICKETS: u64 = 100;
+    const GROUP_SIZE: usize = 4;
+
+    ctx.launcher().with_tickets(TICKETS).launch().await?;
+
+    ctx.api.post_num_servers(1).await?;
+
+    let mut sold = Vec::new();
+
+    for _ in 0..TICKETS as usize / GROUP_SIZE {
+        let mut session = ctx.api.create_user_session(None);
+        let ticket_ids = session.reserve_tickets(GROUP_SIZE).await?.result?.reserved()?;
+        ctx.check_eq(ticket_ids.len(), GROUP_SIZE, "Wrong number of tickets reserved!")?;
+        let mut bought = session.buy_tickets(&ticket_ids).await?.result?;
+        bought.sort();
+        let mut expected = ticket_ids.clone();
+        expected.sort();
+        ctx.check_eq(bought, expected, "Bought tickets do not match the reservation!")?;
+        ctx.check(
+            session.buy_tickets(&ticket_ids).await?.result.is_err(),
+            "Tickets have been bought twice!",
+        )?;
+        sold.extend(ticket_ids);
+    }
+
+    sold.sort();
+    sold.dedup();
+    ctx.check_eq(sold.len(), TICKETS as usize, "A ticket has been sold twice!")?;
+
+    let mut session = ctx.api.create_user_session(None);
+    ctx.check(
+        matches!(
+            session.reserve_tickets(1).await?.result?,
+            GroupReservation::SoldOut
+        ),
+        "Tickets should be sold out!",
+    )?;
+
+    Ok(())
+}
+
+pub async fn test_abort_groups(ctx: &TestCtx) -> Result<()> {
+    const TICKETS: u64 = 6;
+
+    ctx.launcher().with_tickets(TICKETS).launch().await?;
+
+    ctx.api.post_num_servers(1).await?;
+
+    let mut first = ctx.api.create_user_session(None);
+    let mut second = ctx.api.create_user_session(None);
+
+    let ticket_ids = first.reserve_tickets(TICKETS as usize).await?.result?.reserved()?;
+
+    // Groups are reserved all or nothing.
+    ctx.check(
+        matches!(
+            second.reserve_tickets(1).await?.result?,
+            GroupReservation::SoldOut
+        ),
+        "Tickets should be sold out!",
+    )?;
+
+    // A group is only aborted as a whole.
+    ctx.check(
+        first.abort_tickets(&ticket_ids[1..]).await?.result.is_err(),
+        "A group has been aborted partially!",
+    )?;
+    first.abort_tickets(&ticket_ids).await?.result?;
+    ctx.check(
+        first.buy_tickets(&ticket_ids).await?.result.is_err(),
+        "An aborted group has been bought!",
+    )?;
+
+    // The aborted tickets are available again.
+    let ticket_ids = second.reserve_tickets(TICKETS as usize).await?.result?.reserved()?;
+    second.buy_tickets(&ticket_ids).await?.result?;
+
+    Ok(())
+}
@@ -1,8 +1,17 @@
 use crate::registry::{registry, Registry};
 
 pub mod example;
+pub mod groups;
+pub mod restart;
+pub mod soldout;
 
 pub fn all_tests() -> Registry {
     // Add any additional tests here.
-    registry![example::test_buy_tickets,]
+    registry![
+        example::test_buy_tickets,
+        groups::test_buy_groups,
+        groups::test_abort_groups,
+        restart::test_buy_after_restart,
+        soldout::test_reserve_again_when_sold_out,
+    ]
 }
@@ -0,0 +1,48 @@
+use std::time::Duration;
+
+use eyre::Result;
+use tokio::time::sleep;
+use uuid::Uuid;
+
+use crate::context::TestCtx;
+
+pub async fn test_buy_after_restart(ctx: &TestCtx) -> Result<()> {
+    const TICKETS: u64 = 100;
+
+    let journal = std::env::temp_dir().join(format!("rocket-{}.journal", Uuid::new_v4()));
+
+    let rocket = ctx
+        .launcher()
+        .with_tickets(TICKETS)
+        .with_timeout(60)
+        .with_journal(&journal)
+        .launch()
+        .await?;
+
+    ctx.api.post_num_servers(2).await?;
+
+    let mut session = ctx.api.create_user_session(None);
+    let ticket = session.reserve_ticket().await?.result?.reserved()?;
+
+    // Give the journal some time to write the reservation before the crash.
+    sleep(Duration::from_millis(500)).await;
+    rocket.kill().await;
+
+    ctx.launcher()
+        .with_tickets(TICKETS)
+        .with_timeout(60)
+        .with_journal(&journal)
+        .launch()
+        .await?;
+
+    ctx.api.post_num_servers(2).await?;
+
+    // The session still sends the id of a server of the crashed process.
+    let result = session.buy_ticket(ticket).await?.result;
+
+    std::fs::remove_file(&journal).ok();
+
+    ctx.check_eq(result?, ticket, "Recovered reservation could not be bought!")?;
+
+    Ok(())
+}
@@ -0,0 +1,37 @@
+use eyre::Result;
+
+use crate::{api::Reservation, context::TestCtx};
+
+pub async fn test_reserve_again_when_sold_out(ctx: &TestCtx) -> Result<()> {
+    ctx.launcher().with_tickets(1).launch().await?;
+
+    ctx.api.post_num_servers(1).await?;
+
+    let mut session = ctx.api.create_user_session(None);
+    let ticket = session.reserve_ticket().await?.result?.reserved()?;
+
+    // Every ticket is reserved now, but the customer holding the reservation is still
+    // told that it already holds one instead of sold out.
+    match session.reserve_ticket().await?.result {
+        Ok(_) => ctx.fail("A second ticket has been reserved!")?,
+        Err(error) => ctx.check(
+            error.to_string().contains("A ticket has already been reserved!"),
+            "The customer holding the reservation should not be told sold out!",
+        )?,
+    }
+
+    // Other customers are told sold out.
+    let mut other = ctx.api.create_user_session(None);
+    ctx.check(
+        matches!(other.reserve_ticket().await?.result?, Reservation::SoldOut),
+        "Tickets should be sold out!",
+    )?;
+
+    ctx.check_eq(
+        session.buy_ticket(ticket).await?.result?,
+        ticket,
+        "Ticket id does not match!",
+    )?;
+
+    Ok(())
+}